@@ -0,0 +1,111 @@
+/*
+	Copyright NetFoundry Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	https://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+
+package com.example.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+
+/**
+ * Compares two JMH result files written with {@code -rf json}, a baseline and a candidate, and exits with status 1 if
+ * any benchmark in both got worse by more than the allowed percentage. A difference that is inside the combined
+ * confidence intervals of the two scores is not counted as a regression, however large the percentage.
+ * <p>
+ * Usage: {@code CompareResults baseline.json candidate.json [maxRegressionPercent]}.
+ */
+public final class CompareResults {
+  private static final Logger log = LoggerFactory.getLogger(CompareResults.class);
+  private static final double DEFAULT_MAX_REGRESSION_PERCENT = 10;
+  private static final JsonMapper jsonMapper = new JsonMapper();
+
+  private record Score(String mode, double score, double error, String unit) {
+    /**
+     * @return how much worse the candidate is in percent, negative if it is better
+     */
+    double regressionPercent(final Score candidate) {
+      final double change = 100 * (candidate.score() - score) / score;
+      // throughput is better when higher, every other mode measures time
+      return mode.equals("thrpt") ? -change : change;
+    }
+
+    boolean overlaps(final Score candidate) {
+      return Math.abs(candidate.score() - score) <= error + candidate.error();
+    }
+  }
+
+  private CompareResults() {
+    // main class.  No public constructor needed
+  }
+
+  public static void main(final String[] args) throws IOException {
+    if (args.length < 2) {
+      log.error("Usage: CompareResults baseline.json candidate.json [maxRegressionPercent]");
+      System.exit(1);
+    }
+    final Map<String, Score> baseline = read(new File(args[0]));
+    final Map<String, Score> candidate = read(new File(args[1]));
+    final double maxRegressionPercent = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_MAX_REGRESSION_PERCENT;
+    int regressions = 0;
+    for (final Map.Entry<String, Score> entry : new TreeMap<>(candidate).entrySet()) {
+      final Score before = baseline.get(entry.getKey());
+      final Score after = entry.getValue();
+      if (before == null) {
+        log.info("{}: {} {} (new)", entry.getKey(), format(after.score()), after.unit());
+        continue;
+      }
+      final double regression = before.regressionPercent(after);
+      final boolean regressed = regression > maxRegressionPercent && !before.overlaps(after);
+      log.info("{}: {} -> {} {} ({}{}%){}", entry.getKey(), format(before.score()), format(after.score()), after.unit(),
+          regression > 0 ? "+" : "", String.format("%.1f", regression), regressed ? " REGRESSION" : "");
+      if (regressed) {
+        regressions++;
+      }
+    }
+    if (regressions > 0) {
+      log.error("{} benchmarks regressed by more than {}%", regressions, maxRegressionPercent);
+      System.exit(1);
+    }
+    log.info("No benchmark regressed by more than {}%", maxRegressionPercent);
+  }
+
+  /**
+   * @return the scores keyed by benchmark name and parameters
+   */
+  private static Map<String, Score> read(final File file) throws IOException {
+    final Map<String, Score> scores = new LinkedHashMap<>();
+    for (final JsonNode result : jsonMapper.readTree(file)) {
+      final StringBuilder key = new StringBuilder(result.path("benchmark").asText());
+      result.path("params").fields().forEachRemaining(param -> key.append(' ').append(param.getKey()).append('=').append(param.getValue().asText()));
+      final JsonNode metric = result.path("primaryMetric");
+      // JMH writes the error as "NaN" when there were too few iterations to compute it
+      final double error = metric.path("scoreError").asDouble();
+      scores.put(key.toString(), new Score(result.path("mode").asText(), metric.path("score").asDouble(),
+          Double.isNaN(error) ? 0 : error, metric.path("scoreUnit").asText()));
+    }
+    return scores;
+  }
+
+  private static String format(final double score) {
+    return String.format("%.3f", score);
+  }
+}
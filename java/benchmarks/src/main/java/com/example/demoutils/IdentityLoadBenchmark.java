@@ -0,0 +1,164 @@
+/*
+	Copyright NetFoundry Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	https://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+
+package com.example.demoutils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.openssl.PEMKeyPair;
+import org.bouncycastle.openssl.PEMParser;
+import org.bouncycastle.openssl.jcajce.JcaPEMKeyConverter;
+import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
+import org.bouncycastle.openssl.jcajce.JcaPKCS8Generator;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Compares loading an enrolled identity from the two formats the examples store: the PKCS12 keystore
+ * {@link AperitivoClient#pkcs12Keystore()} writes, and the JSON identity file the Spring Boot example's SDK writes, whose
+ * PEM key and certificates have to be parsed into a keystore on every load. A self-signed EC identity generated at setup
+ * stands in for an enrolled one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn"})
+public class IdentityLoadBenchmark {
+  private static final String ALIAS = "ziti://controller.example:443/taste-of-ziti";
+  private static final String PEM_PREFIX = "pem:";
+  private static final JsonMapper jsonMapper = new JsonMapper();
+
+  private Path pkcs12File;
+  private Path jsonFile;
+
+  @Setup
+  public void setUp() throws IOException, GeneralSecurityException, OperatorCreationException {
+    final KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+    generator.initialize(new ECGenParameterSpec("secp256r1"));
+    final KeyPair keyPair = generator.generateKeyPair();
+    final X500Name name = new X500Name("CN=taste-of-ziti");
+    final Instant now = Instant.now();
+    final X509Certificate cert = new JcaX509CertificateConverter().getCertificate(new JcaX509v3CertificateBuilder(name,
+        BigInteger.ONE, Date.from(now), Date.from(now.plus(Duration.ofDays(1))), name, keyPair.getPublic())
+        .build(new JcaContentSignerBuilder("SHA256withECDSA").build(keyPair.getPrivate())));
+
+    pkcs12File = Files.createTempFile("identity", ".pkcs12");
+    final KeyStore keyStore = KeyStore.getInstance("PKCS12");
+    keyStore.load(null, "".toCharArray());
+    keyStore.setKeyEntry(ALIAS, keyPair.getPrivate(), "".toCharArray(), new Certificate[] {cert});
+    try (final OutputStream out = Files.newOutputStream(pkcs12File)) {
+      keyStore.store(out, "".toCharArray());
+    }
+
+    // the layout of an identity file written by IdentityConfig.store
+    jsonFile = Files.createTempFile("identity", ".json");
+    final ObjectNode identity = jsonMapper.createObjectNode().put("ztAPI", "https://controller.example:443");
+    identity.putObject("id")
+        .put("key", PEM_PREFIX + pem(new JcaPKCS8Generator(keyPair.getPrivate(), null)))
+        .put("cert", PEM_PREFIX + pem(cert))
+        .put("ca", PEM_PREFIX + pem(cert));
+    jsonMapper.writeValue(jsonFile.toFile(), identity);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(pkcs12File);
+    Files.deleteIfExists(jsonFile);
+  }
+
+  @Benchmark
+  public Key pkcs12() throws IOException, GeneralSecurityException {
+    final KeyStore keyStore = KeyStore.getInstance("PKCS12");
+    try (final InputStream in = Files.newInputStream(pkcs12File)) {
+      keyStore.load(in, "".toCharArray());
+    }
+    return keyStore.getKey(ALIAS, "".toCharArray());
+  }
+
+  @Benchmark
+  public Key json() throws IOException, GeneralSecurityException {
+    final JsonNode id = jsonMapper.readTree(jsonFile.toFile()).path("id");
+    final PrivateKey key;
+    try (final PEMParser parser = new PEMParser(new StringReader(pemValue(id, "key")))) {
+      // "EC PRIVATE KEY" blocks parse as a key pair, possibly without the public key, "PRIVATE KEY" blocks as PKCS8
+      final Object parsed = parser.readObject();
+      key = new JcaPEMKeyConverter().getPrivateKey(parsed instanceof PEMKeyPair keyPair ? keyPair.getPrivateKeyInfo() : (PrivateKeyInfo) parsed);
+    }
+    final CertificateFactory certificates = CertificateFactory.getInstance("X.509");
+    final Certificate cert;
+    try (final InputStream in = new ByteArrayInputStream(pemValue(id, "cert").getBytes(StandardCharsets.US_ASCII))) {
+      cert = certificates.generateCertificate(in);
+    }
+    final KeyStore keyStore = KeyStore.getInstance("PKCS12");
+    keyStore.load(null, "".toCharArray());
+    keyStore.setKeyEntry(ALIAS, key, "".toCharArray(), new Certificate[] {cert});
+    return keyStore.getKey(ALIAS, "".toCharArray());
+  }
+
+  private static String pemValue(final JsonNode id, final String field) {
+    return id.path(field).asText().substring(PEM_PREFIX.length());
+  }
+
+  private static String pem(final Object object) throws IOException {
+    final StringWriter pem = new StringWriter();
+    try (final JcaPEMWriter writer = new JcaPEMWriter(pem)) {
+      writer.writeObject(object);
+    }
+    return pem.toString();
+  }
+}
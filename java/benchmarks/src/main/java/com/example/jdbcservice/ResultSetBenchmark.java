@@ -0,0 +1,108 @@
+/*
+	Copyright NetFoundry Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	https://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+
+package com.example.jdbcservice;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures reading the vets table row by row the way DbClient's export does, against an in-memory H2 database standing
+ * in for Postgres behind ZDBC: plain iteration over every column, and iteration writing each row through a
+ * {@link RowSink} in either format. The difference between the two is the cost of the sink.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn"})
+public class ResultSetBenchmark {
+  private static final String URL = "jdbc:h2:mem:vets;DB_CLOSE_DELAY=-1";
+  private static final String QUERY = "select * from vets";
+  private static final int ROWS = 100_000;
+  private static final int FETCH_SIZE = 1_000;
+
+  private ConnectionSource connections;
+  private Connection keepAlive;
+  private Path exportFile;
+
+  @Setup
+  public void setUp() throws SQLException, IOException {
+    connections = ConnectionSource.driverManager(URL, new Properties());
+    // the in-memory database lives as long as this connection
+    keepAlive = connections.getConnection();
+    try (Statement stmt = keepAlive.createStatement()) {
+      stmt.execute("create table vets(id int primary key, first_name varchar(30), last_name varchar(30))");
+      stmt.execute(String.format("insert into vets select x, 'first' || x, 'last, ' || x from system_range(1, %d)", ROWS));
+    }
+    exportFile = Files.createTempFile("vets", ".export");
+  }
+
+  @TearDown
+  public void tearDown() throws SQLException, IOException {
+    keepAlive.close();
+    Files.deleteIfExists(exportFile);
+  }
+
+  @Benchmark
+  public long iterate(final Blackhole blackhole) throws SQLException {
+    long rows = 0;
+    try (Connection conn = connections.getConnection();
+        Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+      stmt.setFetchSize(FETCH_SIZE);
+      try (ResultSet rs = stmt.executeQuery(QUERY)) {
+        final int columns = rs.getMetaData().getColumnCount();
+        while (rs.next()) {
+          for (int column = 1; column <= columns; column++) {
+            blackhole.consume(rs.getString(column));
+          }
+          rows++;
+        }
+      }
+    }
+    return rows;
+  }
+
+  @Benchmark
+  public long exportCsv() throws SQLException, IOException {
+    return CursorExporter.export(connections, QUERY, FETCH_SIZE, exportFile, RowSink.Format.CSV);
+  }
+
+  @Benchmark
+  public long exportNdjson() throws SQLException, IOException {
+    return CursorExporter.export(connections, QUERY, FETCH_SIZE, exportFile, RowSink.Format.NDJSON);
+  }
+}
@@ -0,0 +1,107 @@
+/*
+	Copyright NetFoundry Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	https://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+
+package com.example.restservice;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import com.example.demoutils.SimulatedOverlay;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Measures one small petstore request and response through the client {@link PetstoreHttpClientFactory} builds, with
+ * a {@link SimulatedOverlay} in place of the real one. {@code pooledConnection} reuses a kept-alive connection,
+ * {@code newConnection} asks the server to close it so every request dials again. The overlay adds nothing by
+ * default, so the client's own overhead is measured. Overlay conditions can be set with e.g.
+ * {@code -p latencyMillis=20 -p connectDelayMillis=50}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn"})
+public class OkHttpRequestBenchmark {
+  private static final String PETSTORE_HOST = "petstore.ziti";
+
+  @Param("0")
+  public int latencyMillis;
+
+  @Param("0")
+  public int connectDelayMillis;
+
+  @Param("0")
+  public int bandwidthKibPerSecond;
+
+  private StandInPetstoreServer server;
+  private PetstoreHttpClientFactory clientFactory;
+  private OkHttpClient client;
+  private Request request;
+  private Request closingRequest;
+
+  @Setup
+  public void setUp() throws IOException {
+    server = StandInPetstoreServer.start(1);
+    final HttpUrl serverUrl = HttpUrl.get(server.baseUrl());
+    final SimulatedOverlay overlay = new SimulatedOverlay(new SimulatedOverlay.Conditions(Duration.ofMillis(latencyMillis),
+        Duration.ZERO, bandwidthKibPerSecond * 1024L, Duration.ofMillis(connectDelayMillis)))
+        .route(PETSTORE_HOST, new InetSocketAddress(serverUrl.host(), serverUrl.port()));
+    clientFactory = new PetstoreHttpClientFactory(PetstoreHttpClientFactory.Settings.defaults(),
+        overlay.socketFactory(), PetstoreClient.zitiDns(overlay::resolve));
+    client = clientFactory.client();
+    request = new Request.Builder().url(String.format("http://%s:%d/api/v3/pet/1", PETSTORE_HOST, 80)).get().build();
+    closingRequest = request.newBuilder().header("Connection", "close").build();
+  }
+
+  @TearDown
+  public void tearDown() {
+    clientFactory.close();
+    server.close();
+  }
+
+  @Benchmark
+  public String pooledConnection() throws IOException {
+    return execute(request);
+  }
+
+  @Benchmark
+  public String newConnection() throws IOException {
+    return execute(closingRequest);
+  }
+
+  private String execute(final Request request) throws IOException {
+    try (final Response response = client.newCall(request).execute()) {
+      return response.body().string();
+    }
+  }
+}
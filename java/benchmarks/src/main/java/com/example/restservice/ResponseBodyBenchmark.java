@@ -0,0 +1,90 @@
+/*
+	Copyright NetFoundry Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	https://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+
+package com.example.restservice;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+
+/**
+ * Compares the two ways the Spring Boot example reads a findByStatus response with Apache HttpClient 5: the whole body
+ * through {@link EntityUtils#toString} and then bound as a list, against streaming it through {@link PetStreamReader}.
+ * Run with {@code -prof gc} to see the allocation per response as well as the time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn"})
+public class ResponseBodyBenchmark {
+  private static final JsonMapper jsonMapper = new JsonMapper();
+
+  @Param({"100", "10000"})
+  public int petCount;
+
+  private StandInPetstoreServer server;
+  private CloseableHttpClient client;
+  private URI uri;
+
+  @Setup
+  public void setUp() throws IOException {
+    server = StandInPetstoreServer.start(petCount);
+    client = HttpClients.createDefault();
+    uri = URI.create(server.baseUrl() + "/api/v3/pet/findByStatus?status=available");
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    client.close();
+    server.close();
+  }
+
+  @Benchmark
+  public long entityUtilsToString(final Blackhole blackhole) throws IOException {
+    return client.execute(new HttpGet(uri), response -> {
+      final List<Pet> pets = jsonMapper.readValue(EntityUtils.toString(response.getEntity()), new TypeReference<List<Pet>>() { });
+      pets.forEach(blackhole::consume);
+      return (long) pets.size();
+    });
+  }
+
+  @Benchmark
+  public long streaming(final Blackhole blackhole) throws IOException {
+    return client.execute(new HttpGet(uri), response -> PetStreamReader.readPets(response.getEntity().getContent(), blackhole::consume));
+  }
+}
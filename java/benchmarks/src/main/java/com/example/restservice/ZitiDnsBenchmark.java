@@ -0,0 +1,82 @@
+/*
+	Copyright NetFoundry Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	https://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+
+package com.example.restservice;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import okhttp3.Dns;
+
+/**
+ * Measures the lookup OkHttp performs before every new petstore connection: the {@link PetstoreClient#zitiDns} lambda
+ * that asks the Ziti resolver first and falls back to the system DNS, with and without {@link CachingDns} in front. A
+ * map of intercepted names stands in for the SDK's resolver, which answers from a similar in-memory table.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn"})
+public class ZitiDnsBenchmark {
+  private static final String INTERCEPTED_NAME = "petstore.ziti";
+  private static final String OTHER_NAME = "localhost";
+
+  private Dns zitiDns;
+  private Dns cachingDns;
+
+  @Setup
+  public void setUp() throws UnknownHostException {
+    final Map<String, InetAddress> intercepts =
+        Map.of(INTERCEPTED_NAME, InetAddress.getByAddress(INTERCEPTED_NAME, new byte[] {100, 64, 0, 2}));
+    zitiDns = PetstoreClient.zitiDns(intercepts::get);
+    cachingDns = new CachingDns(zitiDns, Duration.ofMinutes(1), Duration.ofSeconds(5));
+  }
+
+  @Benchmark
+  public List<InetAddress> interceptedName() throws UnknownHostException {
+    return zitiDns.lookup(INTERCEPTED_NAME);
+  }
+
+  @Benchmark
+  public List<InetAddress> systemFallback() throws UnknownHostException {
+    return zitiDns.lookup(OTHER_NAME);
+  }
+
+  @Benchmark
+  public List<InetAddress> cachedInterceptedName() throws UnknownHostException {
+    return cachingDns.lookup(INTERCEPTED_NAME);
+  }
+
+  @Benchmark
+  public List<InetAddress> cachedSystemFallback() throws UnknownHostException {
+    return cachingDns.lookup(OTHER_NAME);
+  }
+}
@@ -0,0 +1,152 @@
+/*
+	Copyright NetFoundry Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	https://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+
+package com.example.jdbcservice;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.postgresql.PGConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads a CSV file with a header row into a table. Sending one insert per row costs a round trip over the overlay per
+ * row, so both strategies here send many rows per round trip instead:
+ * <ul>
+ *   <li>{@link Strategy#BATCH} binds each row to an insert and sends them {@code batchSize} at a time with
+ *   {@link PreparedStatement#executeBatch()}. Works with any JDBC driver</li>
+ *   <li>{@link Strategy#COPY} streams the file unparsed to Postgres' {@code COPY ... FROM STDIN}, which parses it on the
+ *   server. Postgres only</li>
+ * </ul>
+ */
+final class BulkLoader {
+  private static final Logger log = LoggerFactory.getLogger(BulkLoader.class);
+
+  enum Strategy {
+    BATCH, COPY
+  }
+
+  private final ConnectionSource connections;
+  private final String table;
+  private final int batchSize;
+
+  /**
+   * @param table the table to load. It is interpolated into the statements and must already be a validated identifier
+   */
+  BulkLoader(final ConnectionSource connections, final String table, final int batchSize) {
+    this.connections = connections;
+    this.table = table;
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Loads the file in one transaction.
+   * @param commit false to roll the transaction back once the rows are sent, so strategies can be compared on the same
+   * table without the loads conflicting
+   * @return the number of rows loaded
+   */
+  long load(final Path file, final Strategy strategy, final boolean commit) throws SQLException, IOException {
+    final List<String> columns = readHeader(file);
+    log.info("Loading {} into {} ({}) with {}", file, table, String.join(", ", columns), strategy);
+    final long start = System.nanoTime();
+    final long rows;
+    try (Connection conn = connections.getConnection()) {
+      final boolean autoCommit = conn.getAutoCommit();
+      conn.setAutoCommit(false);
+      boolean loaded = false;
+      try {
+        rows = strategy == Strategy.COPY ? copy(conn, file, columns) : batch(conn, file, columns);
+        loaded = true;
+      } finally {
+        if (loaded && commit) {
+          conn.commit();
+        } else {
+          conn.rollback();
+        }
+        conn.setAutoCommit(autoCommit);
+      }
+    }
+    final long elapsedNanos = System.nanoTime() - start;
+    log.info("{}: loaded {} rows in {} ms: {} rows/s{}", strategy, rows, TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+        String.format("%.0f", rows * (double) TimeUnit.SECONDS.toNanos(1) / Math.max(1, elapsedNanos)),
+        commit ? "" : " (rolled back)");
+    return rows;
+  }
+
+  private long batch(final Connection conn, final Path file, final List<String> columns) throws SQLException, IOException {
+    final String sql = String.format("insert into %s (%s) values (%s)", table, String.join(", ", columns),
+        String.join(", ", Collections.nCopies(columns.size(), "?")));
+    long rows = 0;
+    try (CsvReader csv = new CsvReader(Files.newBufferedReader(file, StandardCharsets.UTF_8));
+        PreparedStatement stmt = conn.prepareStatement(sql)) {
+      csv.readRecord();
+      List<String> record;
+      while ((record = csv.readRecord()) != null) {
+        if (record.size() != columns.size()) {
+          throw new IOException(String.format("Row %d of %s has %d fields, expected %d", rows + 1, file, record.size(), columns.size()));
+        }
+        for (int i = 0; i < record.size(); i++) {
+          stmt.setString(i + 1, record.get(i));
+        }
+        stmt.addBatch();
+        if (++rows % batchSize == 0) {
+          stmt.executeBatch();
+        }
+      }
+      if (rows % batchSize != 0) {
+        stmt.executeBatch();
+      }
+    }
+    return rows;
+  }
+
+  private long copy(final Connection conn, final Path file, final List<String> columns) throws SQLException, IOException {
+    if (!conn.isWrapperFor(PGConnection.class)) {
+      throw new SQLException("COPY needs a Postgres connection, not " + conn.getMetaData().getDatabaseProductName());
+    }
+    final String sql = String.format("copy %s (%s) from stdin with (format csv, header true)", table, String.join(", ", columns));
+    try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      return conn.unwrap(PGConnection.class).getCopyAPI().copyIn(sql, reader);
+    }
+  }
+
+  /**
+   * @return the column names from the first line, which are interpolated into the statements and so are validated
+   */
+  private static List<String> readHeader(final Path file) throws IOException {
+    try (CsvReader csv = new CsvReader(Files.newBufferedReader(file, StandardCharsets.UTF_8))) {
+      final List<String> header = csv.readRecord();
+      if (header == null) {
+        throw new IOException(file + " is empty, expected a header row");
+      }
+      for (final String column : header) {
+        if (column == null || !column.matches("[A-Za-z_][A-Za-z0-9_]*")) {
+          throw new IOException(String.format("'%s' in the header of %s is not a valid column name", column, file));
+        }
+      }
+      return header;
+    }
+  }
+}
@@ -0,0 +1,39 @@
+/*
+	Copyright NetFoundry Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	https://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+
+package com.example.jdbcservice;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Properties;
+
+/**
+ * Where DbClient gets its database connections from: either a new physical connection per call through
+ * {@link DriverManager}, or a pooled {@link javax.sql.DataSource}. Closing a connection from a pool returns it to the pool.
+ */
+@FunctionalInterface
+interface ConnectionSource {
+
+  Connection getConnection() throws SQLException;
+
+  /**
+   * @return a source that opens a new connection, and for ZDBC urls a new overlay dial, on every call
+   */
+  static ConnectionSource driverManager(final String url, final Properties props) {
+    return () -> DriverManager.getConnection(url, props);
+  }
+}
@@ -0,0 +1,88 @@
+/*
+	Copyright NetFoundry Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	https://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+
+package com.example.jdbcservice;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads RFC 4180 CSV, the format {@link RowSink} writes, one record at a time. Quoted fields may contain separators,
+ * doubled quotes and line breaks. An empty unquoted field is read as null and an empty quoted field as an empty string,
+ * matching how Postgres' {@code COPY ... (FORMAT csv)} treats them.
+ */
+final class CsvReader implements Closeable {
+  private static final int BUFFER_SIZE = 1 << 16;
+  private final Reader in;
+  private int next;
+
+  CsvReader(final Reader in) throws IOException {
+    this.in = new BufferedReader(in, BUFFER_SIZE);
+    this.next = this.in.read();
+  }
+
+  /**
+   * @return the fields of the next record, or null at the end of the input
+   */
+  List<String> readRecord() throws IOException {
+    if (next < 0) {
+      return null;
+    }
+    final List<String> fields = new ArrayList<>();
+    final StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    boolean inQuotes = false;
+    while (next >= 0) {
+      final char c = (char) next;
+      next = in.read();
+      if (inQuotes) {
+        if (c != '"') {
+          field.append(c);
+        } else if (next == '"') {
+          field.append('"');
+          next = in.read();
+        } else {
+          inQuotes = false;
+        }
+      } else if (c == '"') {
+        quoted = true;
+        inQuotes = true;
+      } else if (c == ',') {
+        fields.add(quoted || field.length() > 0 ? field.toString() : null);
+        field.setLength(0);
+        quoted = false;
+      } else if (c == '\r' || c == '\n') {
+        if (c == '\r' && next == '\n') {
+          next = in.read();
+        }
+        break;
+      } else {
+        field.append(c);
+      }
+    }
+    fields.add(quoted || field.length() > 0 ? field.toString() : null);
+    return fields;
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+}
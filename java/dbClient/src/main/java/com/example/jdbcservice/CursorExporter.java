@@ -0,0 +1,79 @@
+/*
+	Copyright NetFoundry Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	https://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+
+package com.example.jdbcservice;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Exports a query result to a file through a server-side cursor. By default the Postgres driver reads the whole result
+ * into memory before the first row is returned. With auto-commit off and a fetch size set, it instead pulls
+ * {@code fetchSize} rows per round trip over the overlay, so memory use stays constant however large the table is.
+ */
+final class CursorExporter {
+  private static final Logger log = LoggerFactory.getLogger(CursorExporter.class);
+  private static final long PROGRESS_INTERVAL_ROWS = 100_000;
+
+  private CursorExporter() {
+    // utility class.  No public constructor needed
+  }
+
+  /**
+   * @return the number of rows written
+   */
+  static long export(final ConnectionSource connections, final String sql, final int fetchSize, final Path file,
+      final RowSink.Format format) throws SQLException, IOException {
+    log.info("Exporting '{}' to {} as {} with a fetch size of {}", sql, file, format, fetchSize);
+    final long start = System.nanoTime();
+    long rows = 0;
+    try (Connection conn = connections.getConnection()) {
+      final boolean autoCommit = conn.getAutoCommit();
+      // the driver only streams through a cursor inside a transaction
+      conn.setAutoCommit(false);
+      try (Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+        stmt.setFetchSize(fetchSize);
+        try (ResultSet rs = stmt.executeQuery(sql);
+            RowSink sink = RowSink.open(file, format, rs.getMetaData())) {
+          while (rs.next()) {
+            sink.write(rs);
+            if (sink.rows() % PROGRESS_INTERVAL_ROWS == 0) {
+              log.info("Exported {} rows", sink.rows());
+            }
+          }
+          rows = sink.rows();
+        }
+      } finally {
+        // nothing was written, end the read-only transaction that held the cursor
+        conn.rollback();
+        conn.setAutoCommit(autoCommit);
+      }
+    }
+    final long elapsedNanos = System.nanoTime() - start;
+    log.info("Exported {} rows ({} bytes) to {} in {} ms: {} rows/s", rows, Files.size(file), file,
+        TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+        String.format("%.0f", rows * (double) TimeUnit.SECONDS.toNanos(1) / Math.max(1, elapsedNanos)));
+    return rows;
+  }
+}
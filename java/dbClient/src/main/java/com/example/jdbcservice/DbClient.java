@@ -16,15 +16,22 @@
 
 package com.example.jdbcservice;
 
-import static com.example.demoutils.AperitivoUtils.DEFAULT_ZITI_IDENTITY_FILE;
+import static com.example.demoutils.AperitivoClient.DEFAULT_APERITIVO_URL;
+import static com.example.demoutils.AperitivoClient.DEFAULT_PKCS12_IDENTITY_FILE;
 import static java.lang.System.exit;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
 import java.util.Properties;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.DefaultParser;
@@ -37,7 +44,11 @@ import org.openziti.ZitiContext;
 import org.openziti.jdbc.ZitiDriver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import com.example.demoutils.AperitivoUtils;
+import com.example.demoutils.AperitivoClient;
+import com.example.demoutils.ContextActivation;
+import com.example.demoutils.SimulatedOverlay;
+import com.example.demoutils.StartupTimer;
+import com.zaxxer.hikari.HikariDataSource;
 
 /**
  * This example is a simple Java client that connects to a private3 database using OpenZiti.
@@ -45,23 +56,166 @@ import com.example.demoutils.AperitivoUtils;
 public class DbClient {
   private static final Logger log = LoggerFactory.getLogger(DbClient.class);
   private static final String APERITIVO_URL_OPTION = "aperitivoUrl";
-  private static final String DEFAULT_APERITIVO_URL = "https://aperitivo.production.netfoundry.io";
   private static final String IDENTITY_OPTION = "identityFile";
   private static final String HELP_OPTION = "help";
+  private static final String JDBC_URL_OPTION = "jdbcUrl";
+  private static final String POOL_OPTION = "pool";
+  private static final String POOL_MIN_OPTION = "poolMin";
+  private static final String POOL_MAX_OPTION = "poolMax";
+  private static final String PREWARM_OPTION = "prewarm";
+  private static final String LEAK_DETECTION_OPTION = "leakDetection";
+  private static final String ITERATIONS_OPTION = "iterations";
+  private static final String BENCHMARK_OPTION = "benchmark";
+  private static final String EXPORT_OPTION = "export";
+  private static final String FORMAT_OPTION = "format";
+  private static final String FETCH_SIZE_OPTION = "fetchSize";
+  private static final String TABLE_OPTION = "table";
+  private static final String PARTITIONS_OPTION = "partitions";
+  private static final String KEY_COLUMN_OPTION = "keyColumn";
+  private static final String ORDERED_OPTION = "ordered";
+  private static final String WORKLOAD_OPTION = "workload";
+  private static final String STATEMENT_CACHE_OPTION = "statementCache";
+  private static final String PREPARE_THRESHOLD_OPTION = "prepareThreshold";
+  private static final String LOAD_OPTION = "load";
+  private static final String STRATEGY_OPTION = "strategy";
+  private static final String BATCH_SIZE_OPTION = "batchSize";
+  private static final String USER_OPTION = "user";
+  private static final String PASSWORD_OPTION = "password";
+  private static final String TIMING_REPORT_OPTION = "timingReport";
+  private static final String SIM_LATENCY_OPTION = "simLatency";
+  private static final String SIM_JITTER_OPTION = "simJitter";
+  private static final String SIM_BANDWIDTH_OPTION = "simBandwidth";
+  private static final String SIM_CONNECT_DELAY_OPTION = "simConnectDelay";
+  private static final List<String> SIM_OPTIONS = List.of(SIM_LATENCY_OPTION, SIM_JITTER_OPTION, SIM_BANDWIDTH_OPTION,
+      SIM_CONNECT_DELAY_OPTION);
+  private static final String POSTGRES_SERVICE = "PostgresDemo";
+  // The demo environment has a 'postgres.ziti' intercept address that connects to a 'simpledb`
+  // database with a simpletable in it
+  private static final String DEFAULT_JDBC_URL = "zdbc:postgresql://postgres.ziti/simpledb";
+  private static final String VETS_QUERY = "select * from vets";
+  private static final int DEFAULT_BENCHMARK_ITERATIONS = 100;
+  private static final String DEFAULT_TABLE = "vets";
+  private static final int DEFAULT_FETCH_SIZE = 1000;
+  private static final String DEFAULT_KEY_COLUMN = "id";
+  private static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+  private static final int DEFAULT_PREPARE_THRESHOLD = 1;
+  private static final int DEFAULT_BATCH_SIZE = 1000;
+  private static final String IDENTIFIER_PATTERN = "[A-Za-z_][A-Za-z0-9_]*";
 
   public static void main(final String[] args) {
+    StartupTimer.begin(StartupTimer.Phase.PARSE_OPTIONS);
     final CommandLine cmdLine = parseCommandLineOptions(args);
-    final ZitiContext zitiContext = checkCreateIdentity(cmdLine);
-    connectToDatabaseOverZiti();
+    StartupTimer.end(StartupTimer.Phase.PARSE_OPTIONS);
+    final String url = cmdLine.getOptionValue(JDBC_URL_OPTION, DEFAULT_JDBC_URL);
+    // only ZDBC urls are dialed over OpenZiti. Any other url, e.g. a local Postgres, is used as-is without an identity
+    if (SIM_OPTIONS.stream().anyMatch(cmdLine::hasOption)) {
+      if (url.startsWith("zdbc:")) {
+        log.error("The simulated overlay takes the place of OpenZiti, use it with a plain JDBC url such as jdbc:postgresql://localhost/simpledb");
+        exit(1);
+      }
+      final SimulatedOverlay overlay = new SimulatedOverlay(simulatedConditions(cmdLine)).install();
+      log.info("Simulating the overlay: {}", overlay.conditions());
+    } else if (url.startsWith("zdbc:")) {
+      final ZitiContext zitiContext = checkCreateIdentity(cmdLine);
+      // ZDBC would wait for the service itself, waiting here first lets that wait be timed apart from the first connection
+      StartupTimer.begin(StartupTimer.Phase.SERVICE_AVAILABLE);
+      zitiContext.getService(POSTGRES_SERVICE, TimeUnit.SECONDS.toMillis(60));
+      StartupTimer.end(StartupTimer.Phase.SERVICE_AVAILABLE);
+    }
+    if (cmdLine.hasOption(LOAD_OPTION)) {
+      loadTable(cmdLine, url);
+    } else if (cmdLine.hasOption(WORKLOAD_OPTION)) {
+      runWorkload(cmdLine, url);
+    } else if (cmdLine.hasOption(BENCHMARK_OPTION)) {
+      benchmarkConnectionPool(cmdLine, url);
+    } else if (cmdLine.hasOption(EXPORT_OPTION)) {
+      exportTable(cmdLine, url);
+    } else {
+      connectToDatabaseOverZiti(cmdLine, url);
+    }
+    reportStartupTiming(cmdLine);
     exit(0);
   }
 
+  private static void reportStartupTiming(final CommandLine cmdLine) {
+    StartupTimer.logSummary();
+    if (cmdLine.hasOption(TIMING_REPORT_OPTION)) {
+      try {
+        StartupTimer.writeReport(Path.of(cmdLine.getOptionValue(TIMING_REPORT_OPTION)));
+      } catch (final IOException exception) {
+        log.error("Could not write the startup timing report: {}", exception.getMessage());
+      }
+    }
+  }
+
   private static CommandLine parseCommandLineOptions(final String[] args) {
     final Options options = new Options();
     options.addOption(Option.builder().option("a").longOpt(APERITIVO_URL_OPTION).hasArg(true)
         .desc(String.format("URL for the aperitivo service. Defaults to '%s'", DEFAULT_APERITIVO_URL)).build());
     options.addOption(Option.builder().option("i").longOpt(IDENTITY_OPTION).hasArg(true)
-        .desc(String.format("Identity file, json or pkcs12. Defaults to '%s'", DEFAULT_ZITI_IDENTITY_FILE)).build());
+        .desc(String.format("Identity file, json or pkcs12. Defaults to '%s'", DEFAULT_PKCS12_IDENTITY_FILE)).build());
+    options.addOption(Option.builder().option("u").longOpt(JDBC_URL_OPTION).hasArg(true)
+        .desc(String.format("Database url. Defaults to '%s'", DEFAULT_JDBC_URL)).build());
+    options.addOption(Option.builder().option("p").longOpt(POOL_OPTION)
+        .desc("Borrow connections from a pre-warmed connection pool instead of opening one per query").build());
+    options.addOption(Option.builder().longOpt(POOL_MIN_OPTION).hasArg(true)
+        .desc(String.format("Connections the pool opens at startup and keeps idle. Defaults to %d",
+            PooledDataSourceFactory.PoolSettings.DEFAULT_MIN_IDLE)).build());
+    options.addOption(Option.builder().longOpt(POOL_MAX_OPTION).hasArg(true)
+        .desc(String.format("Maximum connections in the pool. Defaults to %d", PooledDataSourceFactory.PoolSettings.DEFAULT_MAX_SIZE)).build());
+    options.addOption(Option.builder().longOpt(PREWARM_OPTION).hasArg(true)
+        .desc(String.format("Open this many pooled connections before the first query. Implies --%s. Defaults to --%s",
+            POOL_OPTION, POOL_MIN_OPTION)).build());
+    options.addOption(Option.builder().longOpt(LEAK_DETECTION_OPTION).hasArg(true)
+        .desc(String.format("Seconds a connection may be borrowed before a possible leak is reported. Set it above the "
+            + "longest query or export. Defaults to %d, off", PooledDataSourceFactory.PoolSettings.DEFAULT_LEAK_DETECTION_SECONDS)).build());
+    options.addOption(Option.builder().option("n").longOpt(ITERATIONS_OPTION).hasArg(true)
+        .desc(String.format("Number of times to run the query. Defaults to 1, or %d with --%s", DEFAULT_BENCHMARK_ITERATIONS,
+            BENCHMARK_OPTION)).build());
+    options.addOption(Option.builder().option("b").longOpt(BENCHMARK_OPTION)
+        .desc(String.format("Compare per-query latency with and without the connection pool, or with --%s with and without the statement cache",
+            WORKLOAD_OPTION)).build());
+    options.addOption(Option.builder().option("w").longOpt(WORKLOAD_OPTION).hasArg(true)
+        .desc("Run the parameterised queries in this JSON lines file through prepared statements").build());
+    options.addOption(Option.builder().longOpt(STATEMENT_CACHE_OPTION).hasArg(true)
+        .desc(String.format("Prepared statements kept open per connection, 0 to disable. Defaults to %d", DEFAULT_STATEMENT_CACHE_SIZE)).build());
+    options.addOption(Option.builder().longOpt(PREPARE_THRESHOLD_OPTION).hasArg(true)
+        .desc(String.format("Executions of a statement before Postgres prepares it server side. Defaults to %d",
+            DEFAULT_PREPARE_THRESHOLD)).build());
+    options.addOption(Option.builder().option("e").longOpt(EXPORT_OPTION).hasArg(true)
+        .desc("Stream a table to this file through a server-side cursor instead of querying vets").build());
+    options.addOption(Option.builder().longOpt(FORMAT_OPTION).hasArg(true)
+        .desc("Export format, csv or ndjson. Defaults to ndjson for .json/.jsonl/.ndjson files and csv otherwise").build());
+    options.addOption(Option.builder().longOpt(FETCH_SIZE_OPTION).hasArg(true)
+        .desc(String.format("Rows fetched from the cursor per round trip. Defaults to %d", DEFAULT_FETCH_SIZE)).build());
+    options.addOption(Option.builder().option("t").longOpt(TABLE_OPTION).hasArg(true)
+        .desc(String.format("Table to export or load. Defaults to '%s'", DEFAULT_TABLE)).build());
+    options.addOption(Option.builder().longOpt(PARTITIONS_OPTION).hasArg(true)
+        .desc("Export over this many connections in parallel, each reading one range of --keyColumn. Defaults to 1").build());
+    options.addOption(Option.builder().longOpt(KEY_COLUMN_OPTION).hasArg(true)
+        .desc(String.format("Integer column the export is partitioned on. Defaults to '%s'", DEFAULT_KEY_COLUMN)).build());
+    options.addOption(Option.builder().longOpt(ORDERED_OPTION)
+        .desc("Write a partitioned export in key order instead of in arrival order").build());
+    options.addOption(Option.builder().option("l").longOpt(LOAD_OPTION).hasArg(true)
+        .desc("Load this CSV file, with a header row naming the columns, into the table").build());
+    options.addOption(Option.builder().longOpt(STRATEGY_OPTION).hasArg(true)
+        .desc(String.format("How to load, batch or copy. Defaults to copy. With --%s both are measured and rolled back", BENCHMARK_OPTION)).build());
+    options.addOption(Option.builder().longOpt(BATCH_SIZE_OPTION).hasArg(true)
+        .desc(String.format("Rows per executeBatch for the batch strategy. Defaults to %d", DEFAULT_BATCH_SIZE)).build());
+    options.addOption(Option.builder().longOpt(USER_OPTION).hasArg(true)
+        .desc("Database user. Defaults to the read-only demo user").build());
+    options.addOption(Option.builder().longOpt(PASSWORD_OPTION).hasArg(true)
+        .desc("Database password. Defaults to the read-only demo user's password").build());
+    options.addOption(Option.builder().longOpt(TIMING_REPORT_OPTION).hasArg(true)
+        .desc("Write the duration of each startup phase to this file as JSON").build());
+    options.addOption(Option.builder().longOpt(SIM_LATENCY_OPTION).hasArg(true)
+        .desc("With a plain JDBC url, connect through a simulated overlay adding this one-way latency in ms").build());
+    options.addOption(Option.builder().longOpt(SIM_JITTER_OPTION).hasArg(true)
+        .desc("Up to this many ms of random delay added to the simulated latency and connection setup").build());
+    options.addOption(Option.builder().longOpt(SIM_BANDWIDTH_OPTION).hasArg(true)
+        .desc("Cap each direction of a simulated connection to this many KiB/s").build());
+    options.addOption(Option.builder().longOpt(SIM_CONNECT_DELAY_OPTION).hasArg(true)
+        .desc("Ms a simulated connection takes to dial").build());
     options.addOption(Option.builder().option("h").longOpt(HELP_OPTION).desc("Show this help text").build());
     CommandLine commandLine = null;
     try {
@@ -80,71 +234,315 @@ public class DbClient {
     return commandLine;
   }
 
+  private static int intOption(final CommandLine cmdLine, final String option, final int defaultValue) {
+    if (!cmdLine.hasOption(option)) {
+      return defaultValue;
+    }
+    try {
+      return Integer.parseInt(cmdLine.getOptionValue(option));
+    } catch (final NumberFormatException exception) {
+      log.error("Option --{} expects a whole number but was '{}'", option, cmdLine.getOptionValue(option));
+      exit(1);
+      return defaultValue;
+    }
+  }
+
+  private static SimulatedOverlay.Conditions simulatedConditions(final CommandLine cmdLine) {
+    return new SimulatedOverlay.Conditions(
+        Duration.ofMillis(intOption(cmdLine, SIM_LATENCY_OPTION, 0)),
+        Duration.ofMillis(intOption(cmdLine, SIM_JITTER_OPTION, 0)),
+        intOption(cmdLine, SIM_BANDWIDTH_OPTION, 0) * 1024L,
+        Duration.ofMillis(intOption(cmdLine, SIM_CONNECT_DELAY_OPTION, 0)));
+  }
+
+  private static PooledDataSourceFactory.PoolSettings poolSettings(final CommandLine cmdLine) {
+    return new PooledDataSourceFactory.PoolSettings(
+        intOption(cmdLine, POOL_MIN_OPTION, PooledDataSourceFactory.PoolSettings.DEFAULT_MIN_IDLE),
+        intOption(cmdLine, POOL_MAX_OPTION, PooledDataSourceFactory.PoolSettings.DEFAULT_MAX_SIZE),
+        Duration.ofSeconds(PooledDataSourceFactory.PoolSettings.DEFAULT_VALIDATION_TIMEOUT_SECONDS),
+        Duration.ofSeconds(intOption(cmdLine, LEAK_DETECTION_OPTION, PooledDataSourceFactory.PoolSettings.DEFAULT_LEAK_DETECTION_SECONDS)));
+  }
+
   private static ZitiContext loadIdentity(final String identityFile) {
     log.info("Attempting to connect to ziti using identity stored in {}", identityFile);
+    StartupTimer.begin(StartupTimer.Phase.ZITI_INIT);
     Ziti.init(identityFile, "".toCharArray(), false);
+    StartupTimer.end(StartupTimer.Phase.ZITI_INIT);
+    StartupTimer.begin(StartupTimer.Phase.CONTEXT_ACTIVE);
     final ZitiContext zitiContext = Ziti.getContexts().stream().findFirst().orElseThrow(() -> {
       log.error("Could not establish a Ziti context using the identity {}", identityFile);
       return new IllegalArgumentException("Could not create a ZitiContext");
     });
-    if (!zitiContext.getStatus().toString().equals("Active")) {
-      log.warn("Failed to establish a ziti context, status: {}.", zitiContext.getStatus());
-      if (zitiContext.getStatus().toString().equals("NotAuthorized")) {
+    final String status = ContextActivation.awaitLoaded(zitiContext, ContextActivation.DEFAULT_TIMEOUT);
+    if (!status.equals("Active")) {
+      log.warn("Failed to establish a ziti context, status: {}.", status);
+      if (status.equals("NotAuthorized")) {
         log.error("Cannot authenticate with the configured identity. If using '{}', try deleting this saved identity file and trying again",
-                DEFAULT_ZITI_IDENTITY_FILE);
+                DEFAULT_PKCS12_IDENTITY_FILE);
       }
       throw new IllegalArgumentException("Could not authenticate the ZitiContext from: " + identityFile);
     }
+    StartupTimer.end(StartupTimer.Phase.CONTEXT_ACTIVE);
     return zitiContext;
   }
 
   private static ZitiContext checkCreateIdentity(final CommandLine cmdLine) {
     if (cmdLine.hasOption(IDENTITY_OPTION)) {
       return loadIdentity(cmdLine.getOptionValue(IDENTITY_OPTION));
-    } else if (new File(DEFAULT_ZITI_IDENTITY_FILE).exists()) {
-      return loadIdentity(DEFAULT_ZITI_IDENTITY_FILE);
+    } else if (new File(DEFAULT_PKCS12_IDENTITY_FILE).exists()) {
+      return loadIdentity(DEFAULT_PKCS12_IDENTITY_FILE);
     } else {
-      return loadIdentity(AperitivoUtils.createIdentityKeystore(
-              cmdLine.getOptionValue(APERITIVO_URL_OPTION, DEFAULT_APERITIVO_URL)));
+      return loadIdentity(provisionIdentity(cmdLine));
     }
   }
 
-  private static void connectToDatabaseOverZiti() {
-
-    // The demo environment has a 'postgres.ziti' intercept address that connects to a 'simpledb`
-    // database with a simpletable in it
-
-    // The OpenZiti SDK provides ZDBC, a wrapper around JDBC that knows how to talk to a database
-    // over OpenZiti. You can read more about it here:
-    // https://github.com/openziti/ziti-sdk-jvm/tree/main/ziti-jdbc
-    log.info("Querying simpletable in the postgres database over openziti");
-    final String url = "zdbc:postgresql://postgres.ziti/simpledb";
+  private static String provisionIdentity(final CommandLine cmdLine) {
+    final AperitivoClient aperitivo = new AperitivoClient(cmdLine.getOptionValue(APERITIVO_URL_OPTION, DEFAULT_APERITIVO_URL));
+    try {
+      return aperitivo.provision(Path.of(DEFAULT_PKCS12_IDENTITY_FILE), AperitivoClient.pkcs12Keystore()).join().toString();
+    } catch (final CompletionException exception) {
+      log.error("Could not get an identity from aperitivo: {}", exception.getCause().getMessage());
+      exit(2);
+      return null;
+    }
+  }
 
+  private static Properties connectionProperties(final CommandLine cmdLine) {
     final Properties props = new Properties();
 
-    props.setProperty("user", "viewuser");     //  the database read-only username
-    props.setProperty("password", "viewpass"); //  the database read-only password
+    props.setProperty("user", cmdLine.getOptionValue(USER_OPTION, "viewuser"));         //  defaults to the read-only username
+    props.setProperty("password", cmdLine.getOptionValue(PASSWORD_OPTION, "viewpass")); //  and its password
     props.setProperty("connectTimeout", "60");
 
     // Tell the ZDBC driver to wait for up to one minute for a service named "postgres" to be available
     // in the local SDK before connecting.  This is the service configured with the 'postgres.ziti' intercept
     // in the database url above
-    props.setProperty(ZitiDriver.ZITI_WAIT_FOR_SERVICE_NAME, "PostgresDemo");
+    props.setProperty(ZitiDriver.ZITI_WAIT_FOR_SERVICE_NAME, POSTGRES_SERVICE);
     props.setProperty(ZitiDriver.ZITI_WAIT_FOR_SERVICE_TIMEOUT, "PT60S");
+    if (SIM_OPTIONS.stream().anyMatch(cmdLine::hasOption)) {
+      // the Postgres driver creates its sockets from this factory, which dials through the installed simulated overlay
+      props.setProperty("socketFactory", SimulatedOverlay.JdbcSocketFactory.class.getName());
+    }
+    return props;
+  }
 
+  @FunctionalInterface
+  private interface DatabaseTask {
+    void run(ConnectionSource connections) throws SQLException, IOException;
+  }
+
+  private static void connectToDatabaseOverZiti(final CommandLine cmdLine, final String url) {
+
+    // The OpenZiti SDK provides ZDBC, a wrapper around JDBC that knows how to talk to a database
+    // over OpenZiti. You can read more about it here:
+    // https://github.com/openziti/ziti-sdk-jvm/tree/main/ziti-jdbc
+    log.info("Querying simpletable in the postgres database over openziti");
+    final int iterations = intOption(cmdLine, ITERATIONS_OPTION, 1);
+    final boolean pooled = pooled(cmdLine);
+    withConnections(cmdLine, url, connections -> queryVets(connections, iterations, pooled));
+  }
+
+  private static boolean pooled(final CommandLine cmdLine) {
+    return cmdLine.hasOption(POOL_OPTION) || cmdLine.hasOption(PREWARM_OPTION);
+  }
+
+  /**
+   * Runs the task with connections from a pre-warmed pool when --pool or --prewarm is given, or with a new connection
+   * per request otherwise.
+   */
+  private static void withConnections(final CommandLine cmdLine, final String url, final DatabaseTask task) {
+    withConnections(cmdLine, url, connectionProperties(cmdLine), task);
+  }
+
+  private static void withConnections(final CommandLine cmdLine, final String url, final Properties props, final DatabaseTask task) {
     log.info("Connecting to: {}", url);
-    try (Connection conn = DriverManager.getConnection(url, props)) {
-      log.info("Database connected. Issuing a simple database query...");
-      try (Statement stmt = conn.createStatement()) {
-        try (ResultSet rs = stmt.executeQuery("select * from vets")) {
-          while (rs.next()) {
-            log.info("Result from database is: {}: {} {}",
-                rs.getInt(1), rs.getString(2), rs.getString(3));
+    try {
+      if (pooled(cmdLine)) {
+        final PooledDataSourceFactory.PoolSettings settings = poolSettings(cmdLine);
+        // creating the pool already opens its first connection, so it counts as part of the warm-up
+        StartupTimer.begin(StartupTimer.Phase.PREWARM);
+        try (HikariDataSource dataSource = PooledDataSourceFactory.create(url, props, settings)) {
+          PooledDataSourceFactory.warmUp(dataSource, intOption(cmdLine, PREWARM_OPTION, settings.minIdle()));
+          StartupTimer.end(StartupTimer.Phase.PREWARM);
+          task.run(dataSource::getConnection);
+        }
+      } else {
+        task.run(ConnectionSource.driverManager(url, props));
+      }
+    } catch (final SQLException exception) {
+      log.error("SQLException on database call received: ", exception);
+    } catch (final IOException exception) {
+      log.error("IOException writing results: ", exception);
+    }
+  }
+
+  /**
+   * @param pooled whether the connections come from a pre-warmed pool, which decides if the first query is reported as
+   *     warm or as cold
+   */
+  private static void queryVets(final ConnectionSource connections, final int iterations, final boolean pooled) throws SQLException {
+    for (int i = 0; i < iterations; i++) {
+      // the first byte includes the overlay dial and Postgres handshake of the first connection
+      final long start = System.nanoTime();
+      StartupTimer.begin(StartupTimer.Phase.FIRST_BYTE);
+      try (Connection conn = connections.getConnection()) {
+        log.info("Database connected. Issuing a simple database query...");
+        try (Statement stmt = conn.createStatement()) {
+          try (ResultSet rs = stmt.executeQuery(VETS_QUERY)) {
+            StartupTimer.end(StartupTimer.Phase.FIRST_BYTE);
+            if (i == 0) {
+              log.info("First result after {} ms ({}, {})", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                  pooled ? "warm" : "cold", pooled ? "on a pre-warmed pooled connection" : "including the dial and Postgres handshake");
+            }
+            while (rs.next()) {
+              log.info("Result from database is: {}: {} {}",
+                  rs.getInt(1), rs.getString(2), rs.getString(3));
+            }
           }
         }
+      } finally {
+        // a query that failed before its first result leaves the phase to the next one
+        StartupTimer.cancel(StartupTimer.Phase.FIRST_BYTE);
+      }
+    }
+  }
+
+  private static void exportTable(final CommandLine cmdLine, final String url) {
+    final String table = cmdLine.getOptionValue(TABLE_OPTION, DEFAULT_TABLE);
+    if (!table.matches(IDENTIFIER_PATTERN + "(\\." + IDENTIFIER_PATTERN + ")?")) {
+      log.error("'{}' is not a valid table name", table);
+      exit(1);
+    }
+    final Path file = Path.of(cmdLine.getOptionValue(EXPORT_OPTION));
+    final RowSink.Format format = cmdLine.hasOption(FORMAT_OPTION)
+        ? formatOption(cmdLine.getOptionValue(FORMAT_OPTION)) : RowSink.Format.forFile(file);
+    final int fetchSize = intOption(cmdLine, FETCH_SIZE_OPTION, DEFAULT_FETCH_SIZE);
+    final int partitions = intOption(cmdLine, PARTITIONS_OPTION, 1);
+    if (partitions <= 1) {
+      withConnections(cmdLine, url, connections -> CursorExporter.export(connections, "select * from " + table, fetchSize, file, format));
+      return;
+    }
+    final String keyColumn = cmdLine.getOptionValue(KEY_COLUMN_OPTION, DEFAULT_KEY_COLUMN);
+    if (!keyColumn.matches(IDENTIFIER_PATTERN)) {
+      log.error("'{}' is not a valid column name", keyColumn);
+      exit(1);
+    }
+    final int poolMax = Math.max(poolSettings(cmdLine).minIdle(), poolSettings(cmdLine).maxSize());
+    if (pooled(cmdLine) && poolMax < partitions) {
+      log.warn("The pool allows {} connections, so at most that many of the {} partitions are read at once", poolMax, partitions);
+    }
+    final boolean ordered = cmdLine.hasOption(ORDERED_OPTION);
+    withConnections(cmdLine, url,
+        connections -> new ParallelExtractor(connections, table, keyColumn, fetchSize, format).extract(partitions, file, ordered));
+  }
+
+  private static RowSink.Format formatOption(final String format) {
+    try {
+      return RowSink.Format.valueOf(format.toUpperCase(Locale.ROOT));
+    } catch (final IllegalArgumentException exception) {
+      log.error("Unknown export format '{}'. Use csv or ndjson", format);
+      exit(1);
+      return RowSink.Format.CSV;
+    }
+  }
+
+  /**
+   * Runs the workload file with the statement cache, or with -b first without and then with it.
+   */
+  private static void runWorkload(final CommandLine cmdLine, final String url) {
+    final Path file = Path.of(cmdLine.getOptionValue(WORKLOAD_OPTION));
+    List<QueryWorkload.Query> workload = List.of();
+    try {
+      workload = QueryWorkload.load(file);
+    } catch (final IOException exception) {
+      log.error("Could not read the workload {}: {}", file, exception.getMessage());
+      exit(1);
+    }
+    log.info("Loaded {} queries, {} executions, from {}", workload.size(),
+        workload.stream().mapToInt(QueryWorkload.Query::executions).sum(), file);
+    final int cacheSize = intOption(cmdLine, STATEMENT_CACHE_OPTION, DEFAULT_STATEMENT_CACHE_SIZE);
+    final int prepareThreshold = intOption(cmdLine, PREPARE_THRESHOLD_OPTION, DEFAULT_PREPARE_THRESHOLD);
+    final List<QueryWorkload.Query> queries = workload;
+    if (cmdLine.hasOption(BENCHMARK_OPTION)) {
+      withConnections(cmdLine, url, statementProperties(cmdLine, url, 0),
+          connections -> QueryLatencyBenchmark.report("Without statement cache", QueryWorkloadRunner.run(connections, queries, 0)));
+    }
+    withConnections(cmdLine, url, statementProperties(cmdLine, url, cacheSize > 0 ? prepareThreshold : 0),
+        connections -> QueryLatencyBenchmark.report(cacheSize > 0 ? "With statement cache" : "Without statement cache",
+            QueryWorkloadRunner.run(connections, queries, cacheSize)));
+  }
+
+  /**
+   * Connection properties with the Postgres driver's server-side prepare enabled after {@code prepareThreshold}
+   * executions, or, for 0, disabled along with the driver's own cache of statements, so a run without the statement
+   * cache parses and plans every execution.
+   */
+  private static Properties statementProperties(final CommandLine cmdLine, final String url, final int prepareThreshold) {
+    final Properties props = connectionProperties(cmdLine);
+    if (url.contains(":postgresql:")) {
+      props.setProperty("prepareThreshold", Integer.toString(prepareThreshold));
+      if (prepareThreshold == 0) {
+        props.setProperty("preparedStatementCacheQueries", "0");
+      }
+    }
+    return props;
+  }
+
+  private static void loadTable(final CommandLine cmdLine, final String url) {
+    final String table = cmdLine.getOptionValue(TABLE_OPTION, DEFAULT_TABLE);
+    if (!table.matches(IDENTIFIER_PATTERN + "(\\." + IDENTIFIER_PATTERN + ")?")) {
+      log.error("'{}' is not a valid table name", table);
+      exit(1);
+    }
+    final Path file = Path.of(cmdLine.getOptionValue(LOAD_OPTION));
+    final int batchSize = intOption(cmdLine, BATCH_SIZE_OPTION, DEFAULT_BATCH_SIZE);
+    final Properties props = connectionProperties(cmdLine);
+    if (url.contains(":postgresql:")) {
+      // send each batch as multi-row inserts, and let the server convert the CSV strings to the column types
+      props.setProperty("reWriteBatchedInserts", "true");
+      props.setProperty("stringtype", "unspecified");
+    }
+    final List<BulkLoader.Strategy> strategies;
+    if (!cmdLine.hasOption(BENCHMARK_OPTION)) {
+      strategies = List.of(strategyOption(cmdLine.getOptionValue(STRATEGY_OPTION, "copy")));
+    } else if (url.contains(":postgresql:")) {
+      strategies = List.of(BulkLoader.Strategy.values());
+    } else {
+      log.warn("COPY is only available with Postgres, measuring the batch strategy alone");
+      strategies = List.of(BulkLoader.Strategy.BATCH);
+    }
+    withConnections(cmdLine, url, props, connections -> {
+      final BulkLoader loader = new BulkLoader(connections, table, batchSize);
+      for (final BulkLoader.Strategy strategy : strategies) {
+        loader.load(file, strategy, !cmdLine.hasOption(BENCHMARK_OPTION));
+      }
+    });
+  }
+
+  private static BulkLoader.Strategy strategyOption(final String strategy) {
+    try {
+      return BulkLoader.Strategy.valueOf(strategy.toUpperCase(Locale.ROOT));
+    } catch (final IllegalArgumentException exception) {
+      log.error("Unknown load strategy '{}'. Use batch or copy", strategy);
+      exit(1);
+      return BulkLoader.Strategy.COPY;
+    }
+  }
+
+  private static void benchmarkConnectionPool(final CommandLine cmdLine, final String url) {
+    final Properties props = connectionProperties(cmdLine);
+    final int iterations = intOption(cmdLine, ITERATIONS_OPTION, DEFAULT_BENCHMARK_ITERATIONS);
+    final PooledDataSourceFactory.PoolSettings settings = poolSettings(cmdLine);
+    log.info("Running '{}' {} times against {} with and without a connection pool", VETS_QUERY, iterations, url);
+    try {
+      QueryLatencyBenchmark.report("Without pool",
+          QueryLatencyBenchmark.measure(ConnectionSource.driverManager(url, props), VETS_QUERY, iterations));
+      try (HikariDataSource dataSource = PooledDataSourceFactory.create(url, props, settings)) {
+        PooledDataSourceFactory.warmUp(dataSource, settings.minIdle());
+        QueryLatencyBenchmark.report("With pool", QueryLatencyBenchmark.measure(dataSource::getConnection, VETS_QUERY, iterations));
       }
     } catch (final SQLException exception) {
-      log.error("IOException on http call received: ", exception);
+      log.error("SQLException on database call received: ", exception);
     }
   }
 }
@@ -0,0 +1,299 @@
+/*
+	Copyright NetFoundry Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	https://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+
+package com.example.jdbcservice;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Extracts a table over several ZDBC connections at once. The table is split into contiguous ranges of an integer key,
+ * and each range is read through its own cursor on its own virtual thread, so the overlay carries several circuits in
+ * parallel instead of one. Comparing the per-partition and total rows/s for different partition counts shows where
+ * adding connections stops adding throughput.
+ * <p>
+ * Unordered output is written to a single file as rows arrive from any partition. Ordered output sorts each
+ * range by key into its own temporary file, and the files are appended to the target in key order once all are done.
+ */
+final class ParallelExtractor {
+  private static final Logger log = LoggerFactory.getLogger(ParallelExtractor.class);
+
+  /**
+   * @param nullKeys whether this is the partition of the rows whose key is null, which no range includes
+   */
+  private record Partition(int index, long fromKey, long toKey, boolean nullKeys) {
+  }
+
+  private record PartitionResult(Partition partition, long rows, long elapsedNanos) {
+  }
+
+  private final ConnectionSource connections;
+  private final String table;
+  private final String keyColumn;
+  private final int fetchSize;
+  private final RowSink.Format format;
+
+  /**
+   * @param table the table to extract. It is interpolated into the queries and must already be a validated identifier
+   * @param keyColumn an integer, ideally indexed, column to partition on. Also interpolated and must be validated.
+   *     Decimal or other non-integer keys are rejected, since ranges of truncated bounds would skip rows
+   */
+  ParallelExtractor(final ConnectionSource connections, final String table, final String keyColumn, final int fetchSize,
+      final RowSink.Format format) {
+    this.connections = connections;
+    this.table = table;
+    this.keyColumn = keyColumn;
+    this.fetchSize = fetchSize;
+    this.format = format;
+  }
+
+  /**
+   * @return the number of rows written
+   */
+  long extract(final int partitionCount, final Path file, final boolean ordered) throws SQLException, IOException {
+    final long start = System.nanoTime();
+    final List<Partition> partitions = new ArrayList<>();
+    final Path headerFile = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".header");
+    try {
+      try (Connection conn = connections.getConnection()) {
+        try (Statement stmt = conn.createStatement();
+            ResultSet rs = stmt.executeQuery(String.format("select min(%s), max(%s) from %s", keyColumn, keyColumn, table))) {
+          final int keyType = rs.getMetaData().getColumnType(1);
+          if (!isIntegerType(keyType)) {
+            throw new SQLException(String.format("Cannot partition on %s, which is of type %s rather than an integer",
+                keyColumn, rs.getMetaData().getColumnTypeName(1)));
+          }
+          rs.next();
+          final long min = rs.getLong(1);
+          if (!rs.wasNull()) {
+            final long max = rs.getLong(2);
+            // max - min is read as unsigned, so keys spanning more than Long.MAX_VALUE do not overflow, and each
+            // partition covers step + 1 keys. Comparing what is left of the range instead of stepping past max means
+            // the loop also ends when max is close to Long.MAX_VALUE
+            final long step = Long.divideUnsigned(max - min, partitionCount);
+            for (long from = min; ; from += step + 1) {
+              if (Long.compareUnsigned(max - from, step) <= 0) {
+                partitions.add(new Partition(partitions.size(), from, max, false));
+                break;
+              }
+              partitions.add(new Partition(partitions.size(), from, from + step, false));
+            }
+          }
+          // between never matches a null key, so those rows get a partition of their own, last as in key order
+          partitions.add(new Partition(partitions.size(), 0, 0, true));
+        }
+        // an empty query provides the column names for the header, which is written once regardless of partitioning
+        try (Statement stmt = conn.createStatement();
+            ResultSet rs = stmt.executeQuery(String.format("select * from %s where 1 = 0", table))) {
+          RowSink.open(headerFile, format, rs.getMetaData()).close();
+        }
+      }
+      log.info("Extracting {} in {} partitions on {} ({} output)", table, partitions.size(), keyColumn, ordered ? "ordered" : "unordered");
+      final List<PartitionResult> results = ordered ? extractOrdered(partitions, headerFile, file) : extractUnordered(partitions, headerFile, file);
+      report(results, System.nanoTime() - start);
+      return results.stream().mapToLong(PartitionResult::rows).sum();
+    } finally {
+      Files.deleteIfExists(headerFile);
+    }
+  }
+
+  private List<PartitionResult> extractUnordered(final List<Partition> partitions, final Path headerFile, final Path file)
+      throws SQLException, IOException {
+    final Path rowsFile = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".rows");
+    // partitions share one sink, opened by whichever sees a row first and written a row at a time
+    final RowSink[] sink = new RowSink[1];
+    try {
+      final List<PartitionResult> results;
+      try {
+        results = runPartitions(partitions, partition -> readPartition(partition, false, row -> {
+          synchronized (sink) {
+            if (sink[0] == null) {
+              sink[0] = RowSink.open(rowsFile, format, row.getMetaData(), false);
+            }
+            sink[0].write(row);
+          }
+        }));
+      } finally {
+        if (sink[0] != null) {
+          sink[0].close();
+        }
+      }
+      Files.copy(headerFile, file, StandardCopyOption.REPLACE_EXISTING);
+      append(file, rowsFile);
+      return results;
+    } finally {
+      Files.deleteIfExists(rowsFile);
+    }
+  }
+
+  private List<PartitionResult> extractOrdered(final List<Partition> partitions, final Path headerFile, final Path file)
+      throws SQLException, IOException {
+    final List<Path> partitionFiles = new ArrayList<>();
+    try {
+      for (int i = 0; i < partitions.size(); i++) {
+        partitionFiles.add(Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".part" + i));
+      }
+      final List<PartitionResult> results = runPartitions(partitions, partition -> {
+        final RowSink[] sink = new RowSink[1];
+        try {
+          return readPartition(partition, true, row -> {
+            if (sink[0] == null) {
+              sink[0] = RowSink.open(partitionFiles.get(partition.index()), format, row.getMetaData(), false);
+            }
+            sink[0].write(row);
+          });
+        } finally {
+          if (sink[0] != null) {
+            sink[0].close();
+          }
+        }
+      });
+      Files.copy(headerFile, file, StandardCopyOption.REPLACE_EXISTING);
+      for (final Path partitionFile : partitionFiles) {
+        append(file, partitionFile);
+      }
+      return results;
+    } finally {
+      for (final Path partitionFile : partitionFiles) {
+        Files.deleteIfExists(partitionFile);
+      }
+    }
+  }
+
+  @FunctionalInterface
+  private interface RowHandler {
+    void accept(ResultSet row) throws SQLException, IOException;
+  }
+
+  @FunctionalInterface
+  private interface PartitionTask {
+    long run(Partition partition) throws SQLException, IOException;
+  }
+
+  private List<PartitionResult> runPartitions(final List<Partition> partitions, final PartitionTask task)
+      throws SQLException, IOException {
+    final List<Future<PartitionResult>> futures = new ArrayList<>(partitions.size());
+    try (final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (final Partition partition : partitions) {
+        futures.add(executor.submit(() -> {
+          final long start = System.nanoTime();
+          final long rows = task.run(partition);
+          return new PartitionResult(partition, rows, System.nanoTime() - start);
+        }));
+      }
+    }
+    final List<PartitionResult> results = new ArrayList<>(partitions.size());
+    for (final Future<PartitionResult> future : futures) {
+      try {
+        results.add(future.get());
+      } catch (final ExecutionException exception) {
+        if (exception.getCause() instanceof SQLException sqlException) {
+          throw sqlException;
+        }
+        if (exception.getCause() instanceof IOException ioException) {
+          throw ioException;
+        }
+        throw new IllegalStateException("Partition extraction failed", exception.getCause());
+      } catch (final InterruptedException exception) {
+        Thread.currentThread().interrupt();
+        throw new SQLException("Interrupted while extracting " + table, exception);
+      }
+    }
+    return results;
+  }
+
+  private long readPartition(final Partition partition, final boolean ordered, final RowHandler rowHandler)
+      throws SQLException, IOException {
+    final String sql = partition.nullKeys() ? String.format("select * from %s where %s is null", table, keyColumn)
+        : String.format("select * from %s where %s between ? and ?%s", table, keyColumn, ordered ? " order by " + keyColumn : "");
+    long rows = 0;
+    try (Connection conn = connections.getConnection()) {
+      final boolean autoCommit = conn.getAutoCommit();
+      // the driver only streams through a cursor inside a transaction
+      conn.setAutoCommit(false);
+      try (PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+        stmt.setFetchSize(fetchSize);
+        if (!partition.nullKeys()) {
+          stmt.setLong(1, partition.fromKey());
+          stmt.setLong(2, partition.toKey());
+        }
+        try (ResultSet rs = stmt.executeQuery()) {
+          while (rs.next()) {
+            rowHandler.accept(rs);
+            rows++;
+          }
+        }
+      } finally {
+        conn.rollback();
+        conn.setAutoCommit(autoCommit);
+      }
+    }
+    return rows;
+  }
+
+  private static boolean isIntegerType(final int sqlType) {
+    return switch (sqlType) {
+      case Types.TINYINT, Types.SMALLINT, Types.INTEGER, Types.BIGINT -> true;
+      default -> false;
+    };
+  }
+
+  private static void append(final Path target, final Path source) throws IOException {
+    try (FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+      long position = 0;
+      final long size = in.size();
+      while (position < size) {
+        position += in.transferTo(position, size - position, out);
+      }
+    }
+  }
+
+  private void report(final List<PartitionResult> results, final long elapsedNanos) {
+    for (final PartitionResult result : results) {
+      final Partition partition = result.partition();
+      log.info("Partition {} ({} {}): {} rows in {} ms, {} rows/s", partition.index(), keyColumn,
+          partition.nullKeys() ? "is null" : partition.fromKey() + ".." + partition.toKey(), result.rows(),
+          TimeUnit.NANOSECONDS.toMillis(result.elapsedNanos()), rowsPerSecond(result.rows(), result.elapsedNanos()));
+    }
+    final long rows = results.stream().mapToLong(PartitionResult::rows).sum();
+    log.info("Extracted {} rows from {} in {} partitions in {} ms: {} rows/s", rows, table, results.size(),
+        TimeUnit.NANOSECONDS.toMillis(elapsedNanos), rowsPerSecond(rows, elapsedNanos));
+  }
+
+  private static String rowsPerSecond(final long rows, final long elapsedNanos) {
+    return String.format("%.0f", rows * (double) TimeUnit.SECONDS.toNanos(1) / Math.max(1, elapsedNanos));
+  }
+}
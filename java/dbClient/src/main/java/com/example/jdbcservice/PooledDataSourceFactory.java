@@ -0,0 +1,117 @@
+/*
+	Copyright NetFoundry Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	https://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+
+package com.example.jdbcservice;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.openziti.jdbc.ZitiDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Builds a HikariCP pool on top of the ZDBC driver, so repeated queries reuse connections that have already paid for
+ * the service wait, the overlay dial and the Postgres handshake.
+ */
+final class PooledDataSourceFactory {
+  private static final Logger log = LoggerFactory.getLogger(PooledDataSourceFactory.class);
+
+  /**
+   * Sizing and health checks for the pool.
+   * @param minIdle connections the pool keeps open when idle, and the number opened by {@link #warmUp}
+   * @param maxSize upper bound on open connections
+   * @param validationTimeout how long a liveness check of a pooled connection may take before it is discarded
+   * @param leakDetectionThreshold how long a connection may be borrowed before a possible leak is logged. Zero, the
+   *     default, disables it: an export holds its connection for as long as it runs and would be reported as a leak
+   */
+  record PoolSettings(int minIdle, int maxSize, Duration validationTimeout, Duration leakDetectionThreshold) {
+    static final int DEFAULT_MIN_IDLE = 2;
+    static final int DEFAULT_MAX_SIZE = 8;
+    static final int DEFAULT_VALIDATION_TIMEOUT_SECONDS = 5;
+    static final int DEFAULT_LEAK_DETECTION_SECONDS = 0;
+  }
+
+  private PooledDataSourceFactory() {
+    // utility class.  No public constructor needed
+  }
+
+  /**
+   * Creates the pool. The first connection is opened before this returns, so a misconfigured url or identity fails
+   * here rather than on the first query.
+   */
+  static HikariDataSource create(final String url, final Properties props, final PoolSettings settings) {
+    final HikariConfig config = new HikariConfig();
+    config.setPoolName("zdbc");
+    config.setJdbcUrl(url);
+    if (url.startsWith("zdbc:")) {
+      config.setDriverClassName(ZitiDriver.class.getName());
+    }
+    config.setDataSourceProperties(props);
+    config.setMinimumIdle(settings.minIdle());
+    config.setMaximumPoolSize(Math.max(settings.minIdle(), settings.maxSize()));
+    config.setValidationTimeout(settings.validationTimeout().toMillis());
+    // re-validate idle connections periodically so a circuit dropped by the overlay is noticed before it is handed out
+    config.setKeepaliveTime(TimeUnit.MINUTES.toMillis(1));
+    config.setLeakDetectionThreshold(settings.leakDetectionThreshold().toMillis());
+    // the ZDBC driver may wait up to ZITI_WAIT_FOR_SERVICE_TIMEOUT for the service before it dials
+    config.setConnectionTimeout(TimeUnit.SECONDS.toMillis(90));
+    config.setInitializationFailTimeout(1);
+    log.info("Creating a connection pool for {} with {} to {} connections", url, settings.minIdle(), config.getMaximumPoolSize());
+    return new HikariDataSource(config);
+  }
+
+  /**
+   * Opens {@code requested} pooled connections concurrently and returns them to the pool, so they are established
+   * before the first query instead of on its critical path.
+   */
+  static void warmUp(final HikariDataSource dataSource, final int requested) throws SQLException {
+    // every connection is held until all are open, so asking for more than the pool allows would only time out
+    final int connections = Math.min(requested, dataSource.getMaximumPoolSize());
+    final long start = System.nanoTime();
+    final List<Future<Connection>> borrowed = new ArrayList<>(connections);
+    try (final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (int i = 0; i < connections; i++) {
+        borrowed.add(executor.submit(() -> dataSource.getConnection()));
+      }
+    }
+    SQLException failure = null;
+    for (final Future<Connection> connection : borrowed) {
+      try {
+        connection.get().close();
+      } catch (final ExecutionException exception) {
+        failure = exception.getCause() instanceof SQLException sqlException ? sqlException : new SQLException(exception.getCause());
+      } catch (final InterruptedException exception) {
+        Thread.currentThread().interrupt();
+        throw new SQLException("Interrupted while warming up the connection pool", exception);
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+    log.info("Warmed up {} pooled connections in {} ms", connections, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+  }
+}
@@ -0,0 +1,68 @@
+/*
+	Copyright NetFoundry Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	https://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+
+package com.example.jdbcservice;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures the end-to-end latency of a query, from asking the {@link ConnectionSource} for a connection to closing it
+ * after the last row, so the cost of establishing connections is included whenever the source does not pool them.
+ */
+final class QueryLatencyBenchmark {
+  private static final Logger log = LoggerFactory.getLogger(QueryLatencyBenchmark.class);
+
+  private QueryLatencyBenchmark() {
+    // utility class.  No public constructor needed
+  }
+
+  /**
+   * Runs the query {@code iterations} times, one after the other, reading every row.
+   * @return per-query latency in microseconds
+   */
+  static Histogram measure(final ConnectionSource connections, final String sql, final int iterations) throws SQLException {
+    final Histogram latencyMicros = new Histogram(3);
+    for (int i = 0; i < iterations; i++) {
+      final long start = System.nanoTime();
+      try (Connection conn = connections.getConnection();
+          Statement stmt = conn.createStatement();
+          ResultSet rs = stmt.executeQuery(sql)) {
+        while (rs.next()) {
+          rs.getObject(1);
+        }
+      }
+      latencyMicros.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+    }
+    return latencyMicros;
+  }
+
+  static void report(final String name, final Histogram latencyMicros) {
+    log.info("{}: {} queries, latency mean={}ms p50={}ms p90={}ms p99={}ms max={}ms", name, latencyMicros.getTotalCount(),
+        millis(latencyMicros.getMean()), millis(latencyMicros.getValueAtPercentile(50)), millis(latencyMicros.getValueAtPercentile(90)),
+        millis(latencyMicros.getValueAtPercentile(99)), millis(latencyMicros.getMaxValue()));
+  }
+
+  private static String millis(final double micros) {
+    return String.format("%.2f", micros / 1000.0);
+  }
+}
@@ -0,0 +1,66 @@
+/*
+	Copyright NetFoundry Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	https://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+
+package com.example.jdbcservice;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A list of parameterised queries read from a file with one JSON object per line, for example
+ * <pre>
+ * {"sql": "select * from vets where id = ?", "params": [[1], [2], [3]], "repeat": 100}
+ * </pre>
+ * Each query is executed once per parameter set, and the whole set is run {@code repeat} times.
+ */
+final class QueryWorkload {
+
+  /**
+   * @param sql the statement, with {@code ?} placeholders
+   * @param params the values bound to the placeholders, one list per execution. Empty for a query without parameters
+   * @param repeat how many times the parameter sets are run
+   */
+  record Query(String sql, List<List<Object>> params, int repeat) {
+    Query {
+      params = params == null || params.isEmpty() ? List.of(List.of()) : params;
+      repeat = Math.max(1, repeat);
+    }
+
+    int executions() {
+      return params.size() * repeat;
+    }
+  }
+
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  private QueryWorkload() {
+    // utility class.  No public constructor needed
+  }
+
+  static List<Query> load(final Path file) throws IOException {
+    final List<Query> queries = new ArrayList<>();
+    try (MappingIterator<Query> lines = mapper.readerFor(Query.class).readValues(file.toFile())) {
+      while (lines.hasNext()) {
+        queries.add(lines.next());
+      }
+    }
+    return queries;
+  }
+}
@@ -0,0 +1,86 @@
+/*
+	Copyright NetFoundry Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	https://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+
+package com.example.jdbcservice;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs a {@link QueryWorkload} on one connection and measures the latency of every execution, from binding the
+ * parameters to reading the last row. With a statement cache the {@link PreparedStatement}s are kept open for the whole
+ * run; without one every execution prepares and closes its own statement, as a naive client would.
+ */
+final class QueryWorkloadRunner {
+  private static final Logger log = LoggerFactory.getLogger(QueryWorkloadRunner.class);
+
+  private QueryWorkloadRunner() {
+    // utility class.  No public constructor needed
+  }
+
+  /**
+   * @param statementCacheSize statements kept open on the connection, or 0 to prepare a new statement every time
+   * @return per-execution latency in microseconds, across all queries
+   */
+  static Histogram run(final ConnectionSource connections, final List<QueryWorkload.Query> workload, final int statementCacheSize)
+      throws SQLException {
+    final Histogram latencyMicros = new Histogram(3);
+    // the cache belongs to one connection, so the connection is borrowed once for the whole workload
+    try (Connection conn = connections.getConnection();
+        StatementCache cache = new StatementCache(conn, statementCacheSize)) {
+      for (final QueryWorkload.Query query : workload) {
+        final Histogram queryLatencyMicros = new Histogram(3);
+        for (int i = 0; i < query.repeat(); i++) {
+          for (final List<Object> params : query.params()) {
+            final long start = System.nanoTime();
+            if (statementCacheSize > 0) {
+              execute(cache.prepare(query.sql()), params);
+            } else {
+              try (PreparedStatement stmt = conn.prepareStatement(query.sql())) {
+                execute(stmt, params);
+              }
+            }
+            queryLatencyMicros.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+          }
+        }
+        QueryLatencyBenchmark.report(query.sql(), queryLatencyMicros);
+        latencyMicros.add(queryLatencyMicros);
+      }
+      if (statementCacheSize > 0) {
+        log.info("Statement cache: {} hits, {} misses", cache.hits(), cache.misses());
+      }
+    }
+    return latencyMicros;
+  }
+
+  private static void execute(final PreparedStatement stmt, final List<Object> params) throws SQLException {
+    for (int i = 0; i < params.size(); i++) {
+      stmt.setObject(i + 1, params.get(i));
+    }
+    try (ResultSet rs = stmt.executeQuery()) {
+      while (rs.next()) {
+        rs.getObject(1);
+      }
+    }
+  }
+}
@@ -0,0 +1,179 @@
+/*
+	Copyright NetFoundry Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	https://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+
+package com.example.jdbcservice;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Locale;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+
+/**
+ * Writes result set rows to a file one at a time, through a large write buffer, so an export never holds more than the
+ * current row in memory.
+ */
+abstract class RowSink implements Closeable {
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  enum Format {
+    CSV, NDJSON;
+
+    /**
+     * @return NDJSON for .json, .jsonl and .ndjson files, otherwise CSV
+     */
+    static Format forFile(final Path file) {
+      final String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+      return name.endsWith(".json") || name.endsWith(".jsonl") || name.endsWith(".ndjson") ? NDJSON : CSV;
+    }
+  }
+
+  protected final Writer out;
+  protected final String[] columns;
+  private long rows;
+
+  protected RowSink(final Writer out, final ResultSetMetaData metaData) throws SQLException {
+    this.out = out;
+    this.columns = new String[metaData.getColumnCount()];
+    for (int i = 0; i < columns.length; i++) {
+      columns[i] = metaData.getColumnLabel(i + 1);
+    }
+  }
+
+  /**
+   * Creates or truncates the file and, for CSV, writes the header row.
+   */
+  static RowSink open(final Path file, final Format format, final ResultSetMetaData metaData) throws IOException, SQLException {
+    return open(file, format, metaData, true);
+  }
+
+  /**
+   * Creates or truncates the file. Without a header the file can be appended to another file of the same format.
+   */
+  static RowSink open(final Path file, final Format format, final ResultSetMetaData metaData, final boolean header)
+      throws IOException, SQLException {
+    final Writer writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8), BUFFER_SIZE);
+    return format == Format.CSV ? new CsvRowSink(writer, metaData, header) : new JsonLinesRowSink(writer, metaData);
+  }
+
+  /**
+   * Writes the row the result set is currently positioned on.
+   */
+  final void write(final ResultSet rs) throws IOException, SQLException {
+    writeRow(rs);
+    rows++;
+  }
+
+  protected abstract void writeRow(ResultSet rs) throws IOException, SQLException;
+
+  long rows() {
+    return rows;
+  }
+
+  @Override
+  public void close() throws IOException {
+    out.close();
+  }
+
+  /**
+   * RFC 4180 CSV with a header row. Values containing a separator, quote or line break are quoted.
+   */
+  private static final class CsvRowSink extends RowSink {
+
+    private CsvRowSink(final Writer out, final ResultSetMetaData metaData, final boolean header) throws SQLException, IOException {
+      super(out, metaData);
+      if (header) {
+        for (int i = 0; i < columns.length; i++) {
+          writeField(i, columns[i]);
+        }
+        out.write("\r\n");
+      }
+    }
+
+    @Override
+    protected void writeRow(final ResultSet rs) throws IOException, SQLException {
+      for (int i = 0; i < columns.length; i++) {
+        writeField(i, rs.getString(i + 1));
+      }
+      out.write("\r\n");
+    }
+
+    private void writeField(final int index, final String value) throws IOException {
+      if (index > 0) {
+        out.write(',');
+      }
+      if (value == null) {
+        return;
+      }
+      if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+        out.write(value);
+        return;
+      }
+      out.write('"');
+      out.write(value.replace("\"", "\"\""));
+      out.write('"');
+    }
+  }
+
+  /**
+   * One JSON object per line, keyed by column label. Numbers and booleans keep their JSON types, other values are
+   * written as strings.
+   */
+  private static final class JsonLinesRowSink extends RowSink {
+    private static final JsonFactory jsonFactory = new JsonFactory();
+    private final JsonGenerator generator;
+
+    private JsonLinesRowSink(final Writer out, final ResultSetMetaData metaData) throws SQLException, IOException {
+      super(out, metaData);
+      this.generator = jsonFactory.createGenerator(out).setPrettyPrinter(new MinimalPrettyPrinter("\n"));
+    }
+
+    @Override
+    protected void writeRow(final ResultSet rs) throws IOException, SQLException {
+      generator.writeStartObject();
+      for (int i = 0; i < columns.length; i++) {
+        generator.writeFieldName(columns[i]);
+        final Object value = rs.getObject(i + 1);
+        if (value == null) {
+          generator.writeNull();
+        } else if (value instanceof Number || value instanceof Boolean) {
+          generator.writeObject(value);
+        } else {
+          generator.writeString(value.toString());
+        }
+      }
+      generator.writeEndObject();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (rows() > 0) {
+        generator.writeRaw('\n');
+      }
+      generator.close();
+    }
+  }
+}
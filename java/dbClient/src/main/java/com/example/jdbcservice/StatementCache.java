@@ -0,0 +1,94 @@
+/*
+	Copyright NetFoundry Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	https://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+
+package com.example.jdbcservice;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the most recently used {@link PreparedStatement}s of one connection open, keyed by SQL text, so executing the
+ * same query again reuses the statement instead of preparing a new one. Once the Postgres driver has executed a
+ * statement {@code prepareThreshold} times it switches to a named server-side statement, and from then on each
+ * execution skips the parse and plan round trip over the overlay. That only pays off if the statement object survives
+ * between executions, which is what this cache is for.
+ * <p>
+ * Not thread safe, like the connection it belongs to. Closing the cache closes its statements but not the connection.
+ */
+final class StatementCache implements AutoCloseable {
+  private final Connection connection;
+  private final Map<String, PreparedStatement> statements;
+  private long hits;
+  private long misses;
+
+  /**
+   * @param maxSize how many statements are kept open. The least recently used one is closed when the cache is full
+   */
+  StatementCache(final Connection connection, final int maxSize) {
+    this.connection = connection;
+    this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<String, PreparedStatement> eldest) {
+        if (size() <= maxSize) {
+          return false;
+        }
+        closeQuietly(eldest.getValue());
+        return true;
+      }
+    };
+  }
+
+  /**
+   * @return an open statement for the SQL, with its parameters cleared. It must not be closed by the caller
+   */
+  PreparedStatement prepare(final String sql) throws SQLException {
+    final PreparedStatement cached = statements.get(sql);
+    if (cached != null && !cached.isClosed()) {
+      hits++;
+      cached.clearParameters();
+      return cached;
+    }
+    misses++;
+    final PreparedStatement statement = connection.prepareStatement(sql);
+    statements.put(sql, statement);
+    return statement;
+  }
+
+  long hits() {
+    return hits;
+  }
+
+  long misses() {
+    return misses;
+  }
+
+  @Override
+  public void close() {
+    statements.values().forEach(StatementCache::closeQuietly);
+    statements.clear();
+  }
+
+  private static void closeQuietly(final PreparedStatement statement) {
+    try {
+      statement.close();
+    } catch (final SQLException exception) {
+      // the statement is being discarded, there is nothing more to do with it
+    }
+  }
+}
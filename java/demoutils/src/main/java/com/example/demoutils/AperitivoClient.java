@@ -0,0 +1,233 @@
+/*
+	Copyright NetFoundry Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	https://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+
+package com.example.demoutils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openziti.identity.Enroller;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * Aperitivo is a demo service hosted by NetFoundry that generates temporary Identities that have access to the services
+ * on the demo CloudZiti network. Normally, Identity generation and configuration of access to services would be more tightly controlled
+ * within a production network.  For the Taste-of-Ziti demo network, Aperitivo simplifies this aspect of an OpenZiti network and
+ * allows the developer to just explore the connectivity aspects of OpenZiti.
+ * <p>
+ * Requests are asynchronous, so a caller can start provisioning and do other startup work until it needs the identity.
+ * Failed requests are retried with exponential backoff and full jitter, up to {@link Settings#maxAttempts()}. Server
+ * errors, 429 and I/O failures are retried; other client errors are not, since repeating them cannot succeed.
+ */
+public final class AperitivoClient {
+  public static final String DEFAULT_APERITIVO_URL = "https://aperitivo.production.netfoundry.io";
+  public static final String DEFAULT_PKCS12_IDENTITY_FILE = "taste_of_ziti.pkcs12";
+  public static final String DEFAULT_JSON_IDENTITY_FILE = "taste_of_ziti.json";
+  private static final Logger log = LoggerFactory.getLogger(AperitivoClient.class);
+  // every AperitivoClient derives its client from this one, so they share a connection pool and dispatcher
+  private static final OkHttpClient sharedClient = new OkHttpClient.Builder().followRedirects(true).build();
+  private static final JsonMapper jsonMapper = new JsonMapper();
+  private static final int MAX_BACKOFF_DOUBLINGS = 30;
+
+  /**
+   * @param callTimeout how long one attempt may take, from sending the request to reading the whole response
+   * @param maxAttempts attempts before giving up, including the first
+   * @param initialBackoff the upper bound of the delay before the first retry. It doubles for every retry after that
+   * @param maxBackoff the largest upper bound the delay grows to
+   */
+  public record Settings(Duration callTimeout, int maxAttempts, Duration initialBackoff, Duration maxBackoff) {
+    public static final int DEFAULT_CALL_TIMEOUT_SECONDS = 30;
+    public static final int DEFAULT_MAX_ATTEMPTS = 4;
+    public static final int DEFAULT_INITIAL_BACKOFF_MILLIS = 500;
+    public static final int DEFAULT_MAX_BACKOFF_SECONDS = 8;
+
+    public static Settings defaults() {
+      return new Settings(Duration.ofSeconds(DEFAULT_CALL_TIMEOUT_SECONDS), DEFAULT_MAX_ATTEMPTS,
+          Duration.ofMillis(DEFAULT_INITIAL_BACKOFF_MILLIS), Duration.ofSeconds(DEFAULT_MAX_BACKOFF_SECONDS));
+    }
+  }
+
+  /**
+   * A temporary identity, not yet enrolled.
+   * @param jwt the enrollment token
+   * @param validUntil when the demo network removes the identity again
+   */
+  public record Identity(String name, String jwt, Instant validUntil) {
+  }
+
+  /**
+   * Enrolls an identity from its token and stores the result, in whatever format the caller's SDK loads.
+   */
+  @FunctionalInterface
+  public interface IdentityWriter {
+    void write(String jwt, Path file) throws Exception;
+  }
+
+  private final String aperitivoUrl;
+  private final Settings settings;
+  private final OkHttpClient client;
+
+  public AperitivoClient(final String aperitivoUrl) {
+    this(aperitivoUrl, Settings.defaults());
+  }
+
+  public AperitivoClient(final String aperitivoUrl, final Settings settings) {
+    this.aperitivoUrl = aperitivoUrl;
+    this.settings = settings;
+    this.client = sharedClient.newBuilder().callTimeout(settings.callTimeout()).build();
+  }
+
+  /**
+   * Enrolls into a PKCS12 keystore with an empty password, the format the CLI examples load.
+   */
+  public static IdentityWriter pkcs12Keystore() {
+    return (jwt, file) -> {
+      final KeyStore ks = KeyStore.getInstance("PKCS12");
+      // calling load with first parameter set to null creates an empty keystore
+      // Using an empty password here for the demo.  But in practice, the keystore should have secure password and not hard-coded
+      ks.load(null, "".toCharArray());
+      // The Enroller writes the enrolled Identity into the provided keystore
+      Enroller.fromJWT(jwt).enroll(null, ks, ""); // alias name (3rd param) not used during enroll
+      StartupTimer.end(StartupTimer.Phase.ENROLL);
+      StartupTimer.begin(StartupTimer.Phase.WRITE_KEYSTORE);
+      try (final OutputStream out = Files.newOutputStream(file)) {
+        ks.store(out, "".toCharArray());
+      }
+      StartupTimer.end(StartupTimer.Phase.WRITE_KEYSTORE);
+    };
+  }
+
+  /**
+   * Requests a new identity, enrolls it and stores it in the file.
+   * @return the file, once the identity is stored there
+   */
+  public CompletableFuture<Path> provision(final Path file, final IdentityWriter writer) {
+    return requestIdentity().thenApplyAsync(identity -> {
+      log.info("Enrolling identity {}", identity.name());
+      try {
+        writer.write(identity.jwt(), file);
+      } catch (final Exception exception) {
+        throw new IllegalStateException("Failure enrolling and storing the received identity: " + exception.getMessage(), exception);
+      }
+      final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MM/dd/yyyy HH:mm:ss").withZone(ZoneId.systemDefault());
+      log.info("A new identity is stored at {}. This is a temporary identity that is valid until {}",
+          file.toAbsolutePath(), formatter.format(identity.validUntil()));
+      return file;
+    });
+  }
+
+  /**
+   * Asks Aperitivo for a new identity, retrying as configured.
+   * @return the identity, or an {@link IOException} once the attempts are used up or the request is rejected
+   */
+  public CompletableFuture<Identity> requestIdentity() {
+    log.info("Connecting to aperitivo at {} to generate a new identity", aperitivoUrl);
+    // enrollment is timed from the request, as the token is useless without it
+    StartupTimer.begin(StartupTimer.Phase.ENROLL);
+    final CompletableFuture<Identity> result = new CompletableFuture<>();
+    attempt(1, result);
+    return result;
+  }
+
+  private void attempt(final int attempt, final CompletableFuture<Identity> result) {
+    final Request request = new Request.Builder()
+        .url(String.format("%s/aperitivo/v1/identities", aperitivoUrl))
+        .header("Accept", "application/json")
+        .post(RequestBody.create(new byte[0], null))
+        .build();
+    client.newCall(request).enqueue(new Callback() {
+      @Override
+      public void onResponse(final Call call, final Response response) {
+        try (response) {
+          if (response.code() == 200) {
+            result.complete(readIdentity(response.body().string()));
+          } else if (response.code() >= 500 || response.code() == 429) {
+            retry(attempt, result, new IOException(String.format("Aperitivo answered %d: %s", response.code(), response.body().string())));
+          } else {
+            result.completeExceptionally(new IOException(String.format(
+                "Non-success response (%d) received from the aperitivo service when getting a new identity. Body received is: %s",
+                response.code(), response.body().string())));
+          }
+        } catch (final IOException exception) {
+          retry(attempt, result, exception);
+        } catch (final RuntimeException exception) {
+          result.completeExceptionally(exception);
+        }
+      }
+
+      @Override
+      public void onFailure(final Call call, final IOException exception) {
+        retry(attempt, result, exception);
+      }
+    });
+  }
+
+  private void retry(final int attempt, final CompletableFuture<Identity> result, final IOException failure) {
+    if (attempt >= settings.maxAttempts()) {
+      result.completeExceptionally(new IOException(String.format("Failure contacting the Aperitivo service after %d attempts: %s",
+          attempt, failure.getMessage()), failure));
+      return;
+    }
+    // full jitter: a random delay up to the exponential bound, so clients that failed together do not retry together
+    final long delayMillis = ThreadLocalRandom.current().nextLong(backoffBoundMillis(settings, attempt) + 1);
+    log.warn("Attempt {} of {} to get an identity failed ({}), retrying in {} ms", attempt, settings.maxAttempts(),
+        failure.getMessage(), delayMillis);
+    CompletableFuture.runAsync(() -> attempt(attempt + 1, result), CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS));
+  }
+
+  /**
+   * @return the upper bound of the delay after the given failed attempt: the initial backoff doubled for each retry
+   *     before it, up to the maximum backoff
+   */
+  static long backoffBoundMillis(final Settings settings, final int attempt) {
+    // capped, as shifting further would overflow long before any sensible number of attempts
+    final int doublings = Math.min(attempt - 1, MAX_BACKOFF_DOUBLINGS);
+    return Math.min(settings.maxBackoff().toMillis(), settings.initialBackoff().toMillis() << doublings);
+  }
+
+  /* Aperitivo returns a json structure like this:
+  {
+    "name": String identityName,
+    "jwt": String identity jwt to enroll,
+    "validUntil": Date string indicating when the demo identity will be automatically removed
+  }
+  */
+  private static Identity readIdentity(final String body) throws IOException {
+    final JsonNode identity = jsonMapper.readTree(body);
+    if (identity == null || !identity.hasNonNull("jwt")) {
+      throw new IllegalStateException("Unable to read the identity response, or the received identity does not have a jwt field.");
+    }
+    return new Identity(identity.path("name").asText(), identity.get("jwt").asText(), Instant.parse(identity.get("validUntil").asText()));
+  }
+}
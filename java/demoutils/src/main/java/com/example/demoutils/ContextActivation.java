@@ -0,0 +1,53 @@
+/*
+	Copyright NetFoundry Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	https://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+
+package com.example.demoutils;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.openziti.ZitiContext;
+
+/**
+ * Waits for a Ziti context to finish loading. {@code Ziti.init} returns as soon as the identity is read, while the
+ * context is still authenticating with the controller, so its status is {@code Loading} at first.
+ */
+public final class ContextActivation {
+  public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30);
+  private static final long POLL_MILLIS = 20;
+
+  private ContextActivation() {
+    // utility class.  No public constructor needed
+  }
+
+  /**
+   * Polls the status of the context until it is no longer loading or the timeout passes.
+   * @return the last status seen, {@code Active} once the context authenticated
+   */
+  public static String awaitLoaded(final ZitiContext zitiContext, final Duration timeout) {
+    final long deadlineNanos = System.nanoTime() + timeout.toNanos();
+    String status = zitiContext.getStatus().toString();
+    while (status.startsWith("Loading") && System.nanoTime() - deadlineNanos < 0) {
+      try {
+        TimeUnit.MILLISECONDS.sleep(POLL_MILLIS);
+      } catch (final InterruptedException exception) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+      status = zitiContext.getStatus().toString();
+    }
+    return status;
+  }
+}
@@ -0,0 +1,232 @@
+/*
+	Copyright NetFoundry Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	https://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+
+package com.example.demoutils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+
+/**
+ * An unconnected socket that decides how to connect only when {@link #connect} is called. HTTP clients such as OkHttp
+ * create a socket from a {@link javax.net.SocketFactory} first and connect it later, but an OpenZiti context dials and
+ * returns an already connected socket. Subclasses implement {@link #dial} to open that socket, e.g. through a context
+ * chosen per connection, and this class forwards all I/O to it.
+ * <p>
+ * Options set before connecting are remembered and applied to the dialed socket.
+ */
+public abstract class DelegatingSocket extends Socket {
+  private volatile Socket delegate;
+  private volatile boolean closed;
+  private InetSocketAddress endpoint;
+  private int soTimeout;
+  private Boolean tcpNoDelay;
+  private Boolean keepAlive;
+
+  /**
+   * Opens the connection this socket delegates to.
+   * @param timeoutMillis the connect timeout, 0 for none
+   */
+  protected abstract Socket dial(InetSocketAddress endpoint, int timeoutMillis) throws IOException;
+
+  @Override
+  public void connect(final SocketAddress endpoint) throws IOException {
+    connect(endpoint, 0);
+  }
+
+  @Override
+  public void connect(final SocketAddress endpoint, final int timeout) throws IOException {
+    if (!(endpoint instanceof InetSocketAddress inetEndpoint)) {
+      throw new IllegalArgumentException("Unsupported address type " + endpoint);
+    }
+    if (closed) {
+      throw new SocketException("Socket is closed");
+    }
+    if (delegate != null) {
+      throw new SocketException("Already connected");
+    }
+    this.endpoint = inetEndpoint;
+    final Socket socket = dial(inetEndpoint, timeout);
+    socket.setSoTimeout(soTimeout);
+    if (tcpNoDelay != null) {
+      socket.setTcpNoDelay(tcpNoDelay);
+    }
+    if (keepAlive != null) {
+      socket.setKeepAlive(keepAlive);
+    }
+    delegate = socket;
+    if (closed) {
+      // closed by another thread while dialing
+      socket.close();
+      throw new SocketException("Socket is closed");
+    }
+  }
+
+  /**
+   * @return the dialed socket, or null before {@link #connect}
+   */
+  protected Socket delegate() {
+    return delegate;
+  }
+
+  private Socket connected() throws SocketException {
+    if (closed) {
+      throw new SocketException("Socket is closed");
+    }
+    if (delegate == null) {
+      throw new SocketException("Socket is not connected");
+    }
+    return delegate;
+  }
+
+  @Override
+  public InputStream getInputStream() throws IOException {
+    return connected().getInputStream();
+  }
+
+  @Override
+  public OutputStream getOutputStream() throws IOException {
+    return connected().getOutputStream();
+  }
+
+  @Override
+  public synchronized void setSoTimeout(final int timeout) throws SocketException {
+    soTimeout = timeout;
+    if (delegate != null) {
+      delegate.setSoTimeout(timeout);
+    }
+  }
+
+  @Override
+  public synchronized int getSoTimeout() {
+    return soTimeout;
+  }
+
+  @Override
+  public void setTcpNoDelay(final boolean on) throws SocketException {
+    tcpNoDelay = on;
+    if (delegate != null) {
+      delegate.setTcpNoDelay(on);
+    }
+  }
+
+  @Override
+  public boolean getTcpNoDelay() throws SocketException {
+    return delegate != null ? delegate.getTcpNoDelay() : tcpNoDelay != null && tcpNoDelay;
+  }
+
+  @Override
+  public void setKeepAlive(final boolean on) throws SocketException {
+    keepAlive = on;
+    if (delegate != null) {
+      delegate.setKeepAlive(on);
+    }
+  }
+
+  @Override
+  public boolean getKeepAlive() throws SocketException {
+    return delegate != null ? delegate.getKeepAlive() : keepAlive != null && keepAlive;
+  }
+
+  @Override
+  public InetAddress getInetAddress() {
+    return delegate != null && delegate.getInetAddress() != null ? delegate.getInetAddress()
+        : endpoint != null ? endpoint.getAddress() : null;
+  }
+
+  @Override
+  public int getPort() {
+    return delegate != null && delegate.getPort() > 0 ? delegate.getPort() : endpoint != null ? endpoint.getPort() : 0;
+  }
+
+  @Override
+  public SocketAddress getRemoteSocketAddress() {
+    return delegate != null && delegate.getRemoteSocketAddress() != null ? delegate.getRemoteSocketAddress() : endpoint;
+  }
+
+  @Override
+  public InetAddress getLocalAddress() {
+    return delegate != null ? delegate.getLocalAddress() : InetAddress.getLoopbackAddress();
+  }
+
+  @Override
+  public int getLocalPort() {
+    return delegate != null ? delegate.getLocalPort() : -1;
+  }
+
+  @Override
+  public SocketAddress getLocalSocketAddress() {
+    return delegate != null ? delegate.getLocalSocketAddress() : null;
+  }
+
+  @Override
+  public void shutdownInput() throws IOException {
+    connected().shutdownInput();
+  }
+
+  @Override
+  public void shutdownOutput() throws IOException {
+    connected().shutdownOutput();
+  }
+
+  @Override
+  public boolean isConnected() {
+    return delegate != null && delegate.isConnected();
+  }
+
+  @Override
+  public boolean isBound() {
+    return delegate != null && delegate.isBound();
+  }
+
+  @Override
+  public boolean isClosed() {
+    return closed;
+  }
+
+  @Override
+  public boolean isInputShutdown() {
+    return delegate != null && delegate.isInputShutdown();
+  }
+
+  @Override
+  public boolean isOutputShutdown() {
+    return delegate != null && delegate.isOutputShutdown();
+  }
+
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    final Socket socket = delegate;
+    try {
+      if (socket != null) {
+        socket.close();
+      }
+    } finally {
+      super.close();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "[" + (delegate != null ? delegate : "unconnected " + endpoint) + "]";
+  }
+}
@@ -0,0 +1,319 @@
+/*
+	Copyright NetFoundry Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	https://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+
+package com.example.demoutils;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.net.SocketFactory;
+
+/**
+ * Stands in for the OpenZiti overlay, so the examples and benchmarks can run reproducibly without a controller, the
+ * demo network's intercepts or aperitivo. It offers what a client gets from {@code Ziti.getSocketFactory()} and
+ * {@code Ziti.getDNSResolver()}: {@link #resolve} hands out an address for each intercept name, and sockets from
+ * {@link #socketFactory()} dial the local server the name is routed to. Names without a route are dialed as given.
+ * <p>
+ * Every connection is shaped by the {@link Conditions}: a setup delay before it connects, a round trip of latency
+ * before the first read that follows a write, i.e. before each response, and a bandwidth cap in each direction.
+ * Latency is applied per request and response rather than per packet, which is close enough for request/response
+ * protocols such as HTTP/1.1 and the Postgres wire protocol.
+ */
+public final class SimulatedOverlay {
+  private static volatile SimulatedOverlay installed;
+
+  /**
+   * @param latency one-way delay, added twice before each response
+   * @param jitter up to this much random delay added to each latency and connection setup
+   * @param bytesPerSecond bandwidth cap of each direction of a connection, 0 for none
+   * @param connectDelay how long dialing a connection takes, e.g. the overlay's circuit setup
+   */
+  public record Conditions(Duration latency, Duration jitter, long bytesPerSecond, Duration connectDelay) {
+    public static final Conditions NONE = new Conditions(Duration.ZERO, Duration.ZERO, 0, Duration.ZERO);
+  }
+
+  private final Conditions conditions;
+  private final Map<String, InetSocketAddress> routes = new ConcurrentHashMap<>();
+  private final Map<String, InetAddress> interceptAddresses = new ConcurrentHashMap<>();
+  // intercept addresses come from 100.64.0.0/10, the range the Ziti DNS resolver also uses
+  private final AtomicInteger nextAddress = new AtomicInteger(2);
+
+  public SimulatedOverlay(final Conditions conditions) {
+    this.conditions = conditions;
+  }
+
+  public Conditions conditions() {
+    return conditions;
+  }
+
+  /**
+   * Routes connections to an intercept name, on any port, to a local server.
+   */
+  public SimulatedOverlay route(final String interceptName, final InetSocketAddress target) {
+    final int address = nextAddress.getAndIncrement();
+    try {
+      interceptAddresses.put(interceptName,
+          InetAddress.getByAddress(interceptName, new byte[] {100, (byte) (64 + (address >> 16 & 0x3f)), (byte) (address >> 8), (byte) address}));
+    } catch (final UnknownHostException exception) {
+      // only thrown for an address of the wrong length
+      throw new IllegalStateException(exception);
+    }
+    routes.put(interceptName, target);
+    return this;
+  }
+
+  /**
+   * @return the address of a routed intercept name, or null for any other name, like the Ziti DNS resolver
+   */
+  public InetAddress resolve(final String hostname) {
+    return interceptAddresses.get(hostname);
+  }
+
+  /**
+   * @return a factory whose sockets dial through this overlay
+   */
+  public SocketFactory socketFactory() {
+    return new SocketFactory() {
+      @Override
+      public Socket createSocket() {
+        return new SimulatedSocket();
+      }
+
+      @Override
+      public Socket createSocket(final String host, final int port) throws IOException {
+        return connected(new InetSocketAddress(host, port));
+      }
+
+      @Override
+      public Socket createSocket(final String host, final int port, final InetAddress localHost, final int localPort) throws IOException {
+        return connected(new InetSocketAddress(host, port));
+      }
+
+      @Override
+      public Socket createSocket(final InetAddress host, final int port) throws IOException {
+        return connected(new InetSocketAddress(host, port));
+      }
+
+      @Override
+      public Socket createSocket(final InetAddress address, final int port, final InetAddress localAddress, final int localPort)
+          throws IOException {
+        return connected(new InetSocketAddress(address, port));
+      }
+
+      private Socket connected(final InetSocketAddress endpoint) throws IOException {
+        final Socket socket = new SimulatedSocket();
+        socket.connect(endpoint);
+        return socket;
+      }
+    };
+  }
+
+  /**
+   * Makes this the overlay that {@link JdbcSocketFactory} dials through.
+   */
+  public SimulatedOverlay install() {
+    installed = this;
+    return this;
+  }
+
+  /**
+   * For drivers that instantiate their socket factory by class name, e.g. the Postgres driver's {@code socketFactory}
+   * connection property. It dials through the overlay last passed to {@link #install}.
+   */
+  public static final class JdbcSocketFactory extends SocketFactory {
+    private final SocketFactory delegate;
+
+    public JdbcSocketFactory() {
+      if (installed == null) {
+        throw new IllegalStateException("No simulated overlay is installed");
+      }
+      this.delegate = installed.socketFactory();
+    }
+
+    @Override
+    public Socket createSocket() throws IOException {
+      return delegate.createSocket();
+    }
+
+    @Override
+    public Socket createSocket(final String host, final int port) throws IOException {
+      return delegate.createSocket(host, port);
+    }
+
+    @Override
+    public Socket createSocket(final String host, final int port, final InetAddress localHost, final int localPort) throws IOException {
+      return delegate.createSocket(host, port, localHost, localPort);
+    }
+
+    @Override
+    public Socket createSocket(final InetAddress host, final int port) throws IOException {
+      return delegate.createSocket(host, port);
+    }
+
+    @Override
+    public Socket createSocket(final InetAddress address, final int port, final InetAddress localAddress, final int localPort)
+        throws IOException {
+      return delegate.createSocket(address, port, localAddress, localPort);
+    }
+  }
+
+  private final class SimulatedSocket extends DelegatingSocket {
+    private final Pacer inbound = new Pacer();
+    private final Pacer outbound = new Pacer();
+    // set by a write, so the next read waits for the round trip of the request it answers
+    private volatile boolean awaitingResponse;
+    // released by close, so a caller that gives up on the connection, e.g. on a deadline, is not held up by a pause
+    private final CountDownLatch closing = new CountDownLatch(1);
+    private InputStream input;
+    private OutputStream output;
+
+    @Override
+    protected Socket dial(final InetSocketAddress endpoint, final int timeoutMillis) throws IOException {
+      pauseUnlessClosed(conditions.connectDelay());
+      final InetSocketAddress routed = routes.get(endpoint.getHostString());
+      final InetSocketAddress target = routed != null ? routed
+          : endpoint.isUnresolved() ? new InetSocketAddress(endpoint.getHostString(), endpoint.getPort()) : endpoint;
+      final Socket socket = new Socket();
+      try {
+        socket.connect(target, timeoutMillis);
+      } catch (final IOException exception) {
+        socket.close();
+        throw exception;
+      }
+      return socket;
+    }
+
+    @Override
+    public synchronized InputStream getInputStream() throws IOException {
+      if (input == null) {
+        input = new FilterInputStream(super.getInputStream()) {
+          @Override
+          public int read() throws IOException {
+            final byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+          }
+
+          @Override
+          public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            if (awaitingResponse) {
+              awaitingResponse = false;
+              pauseUnlessClosed(conditions.latency().multipliedBy(2));
+            }
+            final int read = super.read(buffer, offset, length);
+            if (read > 0) {
+              inbound.pace(read);
+            }
+            return read;
+          }
+        };
+      }
+      return input;
+    }
+
+    @Override
+    public synchronized OutputStream getOutputStream() throws IOException {
+      if (output == null) {
+        output = new FilterOutputStream(super.getOutputStream()) {
+          @Override
+          public void write(final int value) throws IOException {
+            write(new byte[] {(byte) value}, 0, 1);
+          }
+
+          @Override
+          public void write(final byte[] buffer, final int offset, final int length) throws IOException {
+            outbound.pace(length);
+            out.write(buffer, offset, length);
+            awaitingResponse = true;
+          }
+        };
+      }
+      return output;
+    }
+
+    @Override
+    public void close() throws IOException {
+      closing.countDown();
+      super.close();
+    }
+
+    private void pauseUnlessClosed(final Duration delay) throws IOException {
+      try {
+        if (closing.await(withJitter(delay), TimeUnit.NANOSECONDS)) {
+          throw new SocketException("Socket closed");
+        }
+      } catch (final InterruptedException exception) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while simulating the overlay");
+      }
+    }
+  }
+
+  /**
+   * Holds a direction of a connection to the bandwidth cap, by sleeping until the bytes already passed would have
+   * taken their time on the link.
+   */
+  private final class Pacer {
+    private long linkFreeNanos;
+
+    void pace(final int bytes) throws IOException {
+      if (conditions.bytesPerSecond() <= 0) {
+        return;
+      }
+      final long waitNanos;
+      synchronized (this) {
+        final long now = System.nanoTime();
+        linkFreeNanos = Math.max(now, linkFreeNanos) + bytes * TimeUnit.SECONDS.toNanos(1) / conditions.bytesPerSecond();
+        waitNanos = linkFreeNanos - now;
+      }
+      sleep(waitNanos);
+    }
+  }
+
+  /**
+   * @return the delay plus the random jitter, in nanoseconds
+   */
+  private long withJitter(final Duration delay) {
+    final long jitterNanos = conditions.jitter().toNanos();
+    return delay.toNanos() + (jitterNanos > 0 ? ThreadLocalRandom.current().nextLong(jitterNanos + 1) : 0);
+  }
+
+  private static void sleep(final long nanos) throws IOException {
+    if (nanos <= 0) {
+      return;
+    }
+    try {
+      Thread.sleep(Duration.ofNanos(nanos));
+    } catch (final InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while simulating the overlay");
+    }
+  }
+}
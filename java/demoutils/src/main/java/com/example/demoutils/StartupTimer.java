@@ -0,0 +1,131 @@
+/*
+	Copyright NetFoundry Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	https://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+
+package com.example.demoutils;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Records how long each phase of a client's startup takes, from loading the identity to the first byte of the first
+ * response, so cold-start regressions can be traced to a phase. Times are offsets from when the JVM started. Phases
+ * that do not happen in a run, e.g. enrollment when an identity file already exists, are left out of the report.
+ */
+public final class StartupTimer {
+  private static final Logger log = LoggerFactory.getLogger(StartupTimer.class);
+
+  public enum Phase {
+    PARSE_OPTIONS("parse options"),
+    ENROLL("enroll"),
+    WRITE_KEYSTORE("write keystore"),
+    ZITI_INIT("Ziti.init"),
+    CONTEXT_ACTIVE("context active"),
+    SERVICE_AVAILABLE("service available"),
+    PREWARM("pre-warm"),
+    FIRST_BYTE("first byte");
+
+    private final String label;
+
+    Phase(final String label) {
+      this.label = label;
+    }
+  }
+
+  private record Span(long startNanos, long endNanos) {
+  }
+
+  // nanoTime has no fixed origin, so pin it to the JVM start time once and measure every phase from there
+  private static final long JVM_START_NANOS = System.nanoTime()
+      - TimeUnit.MILLISECONDS.toNanos(ManagementFactory.getRuntimeMXBean().getUptime());
+  private static final Map<Phase, Long> started = new EnumMap<>(Phase.class);
+  private static final Map<Phase, Span> completed = new EnumMap<>(Phase.class);
+
+  private StartupTimer() {
+    // utility class.  No public constructor needed
+  }
+
+  /**
+   * Marks the start of a phase. Only the first start of each phase counts, so later requests do not move it.
+   */
+  public static synchronized void begin(final Phase phase) {
+    if (!completed.containsKey(phase)) {
+      started.putIfAbsent(phase, System.nanoTime());
+    }
+  }
+
+  /**
+   * Marks the end of a phase that was begun. Ignored if the phase was never begun or has already ended.
+   */
+  public static synchronized void end(final Phase phase) {
+    final Long start = started.remove(phase);
+    if (start != null) {
+      completed.put(phase, new Span(start, System.nanoTime()));
+    }
+  }
+
+  /**
+   * Forgets a phase that was begun but will not end, e.g. because the first request failed, so the next begin starts it
+   * again. Ignored if the phase was never begun or has already ended.
+   */
+  public static synchronized void cancel(final Phase phase) {
+    started.remove(phase);
+  }
+
+  /**
+   * Logs one line with the duration of every completed phase and the time from JVM start to the end of the last one.
+   */
+  public static synchronized void logSummary() {
+    final StringJoiner phases = new StringJoiner(", ");
+    completed.forEach((phase, span) -> phases.add(String.format("%s %d ms", phase.label, millis(span.endNanos - span.startNanos))));
+    log.info("Startup: {}; {} ms since JVM start", phases, millis(lastEndNanos() - JVM_START_NANOS));
+  }
+
+  /**
+   * Writes the completed phases as JSON, with their start offset from JVM start and their duration in milliseconds.
+   */
+  public static synchronized void writeReport(final Path file) throws IOException {
+    final JsonMapper jsonMapper = new JsonMapper();
+    final ObjectNode report = jsonMapper.createObjectNode();
+    report.put("jvmStart", Instant.ofEpochMilli(ManagementFactory.getRuntimeMXBean().getStartTime()).toString());
+    report.put("totalMs", millis(lastEndNanos() - JVM_START_NANOS));
+    final ArrayNode phases = report.putArray("phases");
+    completed.forEach((phase, span) -> phases.addObject()
+        .put("phase", phase.name())
+        .put("startMs", millis(span.startNanos - JVM_START_NANOS))
+        .put("durationMs", millis(span.endNanos - span.startNanos)));
+    jsonMapper.writerWithDefaultPrettyPrinter().writeValue(file.toFile(), report);
+    log.info("Wrote the startup timing report to {}", file.toAbsolutePath());
+  }
+
+  private static long lastEndNanos() {
+    return completed.values().stream().mapToLong(Span::endNanos).max().orElse(System.nanoTime());
+  }
+
+  private static long millis(final long nanos) {
+    return TimeUnit.NANOSECONDS.toMillis(nanos);
+  }
+}
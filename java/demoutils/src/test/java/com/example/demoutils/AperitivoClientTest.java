@@ -0,0 +1,132 @@
+/*
+	Copyright NetFoundry Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	https://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+
+package com.example.demoutils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs {@link AperitivoClient} against a local stand-in for the {@code /aperitivo/v1/identities} endpoint that answers
+ * with a scripted sequence of status codes.
+ */
+class AperitivoClientTest {
+  private static final String IDENTITY_JSON = "{\"name\":\"taste-of-ziti-1\",\"jwt\":\"header.payload.signature\","
+      + "\"validUntil\":\"2030-01-01T00:00:00Z\"}";
+  private static final AperitivoClient.Settings FAST_RETRIES =
+      new AperitivoClient.Settings(Duration.ofSeconds(5), 3, Duration.ofMillis(10), Duration.ofMillis(50));
+
+  private final Deque<Integer> responses = new ArrayDeque<>();
+  private final AtomicInteger requests = new AtomicInteger();
+  private HttpServer server;
+  private String baseUrl;
+
+  @BeforeEach
+  void startServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/aperitivo/v1/identities", exchange -> {
+      requests.incrementAndGet();
+      final int status;
+      synchronized (responses) {
+        status = responses.isEmpty() ? 200 : responses.poll();
+      }
+      final byte[] body = (status == 200 ? IDENTITY_JSON : "unavailable").getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(status, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    });
+    server.start();
+    baseUrl = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+  }
+
+  @AfterEach
+  void stopServer() {
+    server.stop(0);
+  }
+
+  @Test
+  void retriesServerErrorsUntilSuccess() throws Exception {
+    responses.add(503);
+    responses.add(500);
+    final AperitivoClient.Identity identity = new AperitivoClient(baseUrl, FAST_RETRIES).requestIdentity().get(10, TimeUnit.SECONDS);
+    assertEquals("header.payload.signature", identity.jwt());
+    assertEquals(Instant.parse("2030-01-01T00:00:00Z"), identity.validUntil());
+    assertEquals(3, requests.get());
+  }
+
+  @Test
+  void givesUpAfterMaxAttempts() {
+    for (int i = 0; i < 5; i++) {
+      responses.add(503);
+    }
+    final ExecutionException failure = assertThrows(ExecutionException.class,
+        () -> new AperitivoClient(baseUrl, FAST_RETRIES).requestIdentity().get(10, TimeUnit.SECONDS));
+    assertInstanceOf(IOException.class, failure.getCause());
+    assertEquals(3, requests.get());
+  }
+
+  @Test
+  void doesNotRetryClientErrors() {
+    responses.add(403);
+    final ExecutionException failure = assertThrows(ExecutionException.class,
+        () -> new AperitivoClient(baseUrl, FAST_RETRIES).requestIdentity().get(10, TimeUnit.SECONDS));
+    assertInstanceOf(IOException.class, failure.getCause());
+    assertEquals(1, requests.get());
+  }
+
+  @Test
+  void backoffDoublesUpToItsMaximumWithoutOverflowing() {
+    final AperitivoClient.Settings settings = new AperitivoClient.Settings(Duration.ofSeconds(1), Integer.MAX_VALUE,
+        Duration.ofMillis(500), Duration.ofSeconds(8));
+    assertEquals(500, AperitivoClient.backoffBoundMillis(settings, 1));
+    assertEquals(1000, AperitivoClient.backoffBoundMillis(settings, 2));
+    assertEquals(8000, AperitivoClient.backoffBoundMillis(settings, 6));
+    for (final int attempt : new int[] {40, 64, 65, 1000, Integer.MAX_VALUE}) {
+      assertEquals(8000, AperitivoClient.backoffBoundMillis(settings, attempt), "attempt " + attempt);
+    }
+  }
+
+  @Test
+  void provisionWritesTheEnrolledIdentity(@TempDir final Path directory) throws Exception {
+    final Path file = directory.resolve("identity.json");
+    final Path written = new AperitivoClient(baseUrl, FAST_RETRIES)
+        .provision(file, (jwt, target) -> Files.writeString(target, jwt))
+        .get(10, TimeUnit.SECONDS);
+    assertEquals(file, written);
+    assertEquals("header.payload.signature", Files.readString(file));
+  }
+}
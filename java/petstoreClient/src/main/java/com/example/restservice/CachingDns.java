@@ -0,0 +1,141 @@
+/*
+	Copyright NetFoundry Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	https://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+
+package com.example.restservice;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import okhttp3.Dns;
+
+/**
+ * A {@link Dns} that caches the answers of another resolver. Successful lookups are kept for the positive TTL and
+ * failed ones for the (usually shorter) negative TTL, so neither the Ziti resolver nor the blocking system DNS fallback
+ * is consulted each time the client opens a connection. Concurrent lookups of a host that is not cached share one call
+ * to the underlying resolver.
+ */
+final class CachingDns implements Dns {
+  private static final Logger log = LoggerFactory.getLogger(CachingDns.class);
+
+  private final Dns delegate;
+  private final long positiveTtlNanos;
+  private final long negativeTtlNanos;
+  private final Map<String, Answer> answers = new ConcurrentHashMap<>();
+  private final Map<String, CompletableFuture<Answer>> inFlight = new ConcurrentHashMap<>();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong negativeHits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong coalesced = new AtomicLong();
+
+  /**
+   * @param delegate the resolver whose answers are cached
+   * @param positiveTtl how long a successful lookup is reused
+   * @param negativeTtl how long a failed lookup is remembered before the host is looked up again
+   */
+  CachingDns(final Dns delegate, final Duration positiveTtl, final Duration negativeTtl) {
+    this.delegate = delegate;
+    this.positiveTtlNanos = positiveTtl.toNanos();
+    this.negativeTtlNanos = negativeTtl.toNanos();
+  }
+
+  @Override
+  public List<InetAddress> lookup(final String hostname) throws UnknownHostException {
+    final Answer cached = answers.get(hostname);
+    if (cached != null && !cached.isExpired()) {
+      (cached.addresses().isEmpty() ? negativeHits : hits).incrementAndGet();
+      return cached.addressesOrThrow(hostname);
+    }
+    final CompletableFuture<Answer> lookup = new CompletableFuture<>();
+    final CompletableFuture<Answer> existing = inFlight.putIfAbsent(hostname, lookup);
+    if (existing != null) {
+      coalesced.incrementAndGet();
+      try {
+        return existing.join().addressesOrThrow(hostname);
+      } catch (final CompletionException exception) {
+        throw unknownHost(hostname, exception.getCause());
+      }
+    }
+    try {
+      // a lookup that finished between the cache check above and claiming the hostname has already cached its answer
+      final Answer recent = answers.get(hostname);
+      final Answer answer;
+      if (recent != null && !recent.isExpired()) {
+        (recent.addresses().isEmpty() ? negativeHits : hits).incrementAndGet();
+        answer = recent;
+      } else {
+        misses.incrementAndGet();
+        answer = resolve(hostname);
+        answers.put(hostname, answer);
+      }
+      lookup.complete(answer);
+      return answer.addressesOrThrow(hostname);
+    } catch (final RuntimeException exception) {
+      lookup.completeExceptionally(exception);
+      throw exception;
+    } finally {
+      inFlight.remove(hostname, lookup);
+    }
+  }
+
+  private Answer resolve(final String hostname) {
+    try {
+      final List<InetAddress> addresses = delegate.lookup(hostname);
+      if (!addresses.isEmpty()) {
+        return new Answer(List.copyOf(addresses), System.nanoTime() + positiveTtlNanos);
+      }
+    } catch (final UnknownHostException exception) {
+      log.debug("Lookup of {} failed: {}", hostname, exception.getMessage());
+    }
+    return new Answer(List.of(), System.nanoTime() + negativeTtlNanos);
+  }
+
+  private static UnknownHostException unknownHost(final String hostname, final Throwable cause) {
+    final UnknownHostException exception = new UnknownHostException(hostname);
+    exception.initCause(cause);
+    return exception;
+  }
+
+  void logStats() {
+    final long lookups = hits.get() + negativeHits.get() + misses.get() + coalesced.get();
+    final double hitRate = lookups == 0 ? 0 : 100.0 * (hits.get() + negativeHits.get()) / lookups;
+    log.info("DNS cache: {} lookups, {} hits ({} negative), {} misses, {} coalesced with an in-flight lookup ({}% hit rate)",
+        lookups, hits.get() + negativeHits.get(), negativeHits.get(), misses.get(), coalesced.get(), String.format("%.1f", hitRate));
+  }
+
+  /**
+   * A cached lookup result. No addresses means the host could not be resolved.
+   */
+  private record Answer(List<InetAddress> addresses, long expiresAtNanos) {
+    boolean isExpired() {
+      return System.nanoTime() - expiresAtNanos >= 0;
+    }
+
+    List<InetAddress> addressesOrThrow(final String hostname) throws UnknownHostException {
+      if (addresses.isEmpty()) {
+        throw new UnknownHostException(hostname);
+      }
+      return addresses;
+    }
+  }
+}
@@ -0,0 +1,155 @@
+/*
+	Copyright NetFoundry Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	https://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+
+package com.example.restservice;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+/**
+ * Fails requests fast while the petstore keeps failing, instead of letting each one wait out its own timeout on a broken
+ * circuit. Once {@code failureThreshold} requests in a row have failed, with an I/O error, a deadline or a 5xx status,
+ * the breaker opens and rejects every request for the cool-down. It then lets a single trial request through, and
+ * closes again if that succeeds or stays open for another cool-down if it fails. Requests sent before the breaker
+ * opened may still finish after that; they are counted, but only the trial decides whether the breaker closes.
+ */
+final class CircuitBreaker implements Interceptor {
+  private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+  enum State {
+    /** requests are sent */
+    CLOSED,
+    /** requests are rejected until the cool-down has passed */
+    OPEN,
+    /** one trial request is in flight, the others are rejected */
+    HALF_OPEN
+  }
+
+  /**
+   * Thrown instead of sending a request while the breaker is open.
+   */
+  static final class OpenException extends IOException {
+    OpenException(final String message) {
+      super(message);
+    }
+  }
+
+  private final int failureThreshold;
+  private final Duration coolDown;
+  private final LongAdder failures = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+  private State state = State.CLOSED;
+  // how often the breaker has opened, which tells requests admitted before the last opening from the trial
+  private long openings;
+  private int consecutiveFailures;
+  private long openedNanos;
+
+  /**
+   * @param failureThreshold how many requests in a row must fail to open the breaker
+   * @param coolDown how long the breaker stays open before it lets a trial request through
+   */
+  CircuitBreaker(final int failureThreshold, final Duration coolDown) {
+    if (failureThreshold < 1) {
+      throw new IllegalArgumentException("failureThreshold must be at least 1");
+    }
+    this.failureThreshold = failureThreshold;
+    this.coolDown = coolDown;
+  }
+
+  @Override
+  public Response intercept(final Chain chain) throws IOException {
+    final long admittedAfter = admit(chain.request().url().host());
+    final Response response;
+    try {
+      response = chain.proceed(chain.request());
+    } catch (final IOException | RuntimeException exception) {
+      // a call cancelled on its deadline also ends here, which is what makes timeouts count. Unchecked failures count
+      // too, otherwise a trial that throws one would leave the breaker half open for good
+      record(admittedAfter, false);
+      throw exception;
+    }
+    record(admittedAfter, response.code() < 500);
+    return response;
+  }
+
+  /**
+   * @return the number of openings the request was admitted after
+   */
+  private synchronized long admit(final String host) throws OpenException {
+    if (state == State.CLOSED) {
+      return openings;
+    }
+    final long remainingNanos = coolDown.toNanos() - (System.nanoTime() - openedNanos);
+    if (state == State.OPEN && remainingNanos <= 0) {
+      state = State.HALF_OPEN;
+      log.info("The circuit to {} is half open, sending a trial request", host);
+      return openings;
+    }
+    rejected.increment();
+    throw new OpenException(state == State.OPEN
+        ? String.format("The circuit to %s is open after %d failed requests, failing fast for another %d ms", host,
+            consecutiveFailures, TimeUnit.NANOSECONDS.toMillis(remainingNanos))
+        : String.format("The circuit to %s is half open and its trial request is still in flight", host));
+  }
+
+  private synchronized void record(final long admittedAfter, final boolean success) {
+    if (admittedAfter != openings) {
+      // sent before the breaker last opened, so it says nothing about the circuit since then
+      if (!success) {
+        failures.increment();
+      }
+      return;
+    }
+    if (success) {
+      if (state != State.CLOSED) {
+        log.info("The circuit is closed again");
+      }
+      state = State.CLOSED;
+      consecutiveFailures = 0;
+      return;
+    }
+    failures.increment();
+    consecutiveFailures++;
+    if (state == State.HALF_OPEN || state == State.CLOSED && consecutiveFailures >= failureThreshold) {
+      state = State.OPEN;
+      openedNanos = System.nanoTime();
+      openings++;
+      log.warn("Opened the circuit after {} failed requests in a row, failing fast for {} ms", consecutiveFailures,
+          coolDown.toMillis());
+    }
+  }
+
+  synchronized State state() {
+    return state;
+  }
+
+  void logStats() {
+    final long opened;
+    final State current;
+    synchronized (this) {
+      opened = openings;
+      current = state;
+    }
+    log.info("Circuit breaker: {} failed requests, opened {} times, {} requests failed fast. Now {}", failures.sum(),
+        opened, rejected.sum(), current);
+  }
+}
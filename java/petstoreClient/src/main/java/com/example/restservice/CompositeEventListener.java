@@ -0,0 +1,255 @@
+/*
+	Copyright NetFoundry Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	https://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+
+package com.example.restservice;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.HttpUrl;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Passes every event of a call to several listeners in order, as an OkHttpClient takes only one
+ * {@link EventListener.Factory}.
+ */
+final class CompositeEventListener extends EventListener {
+  private final List<EventListener> listeners;
+
+  private CompositeEventListener(final List<EventListener> listeners) {
+    this.listeners = listeners;
+  }
+
+  /**
+   * @return a factory that creates a listener from each of the factories for every call
+   */
+  static EventListener.Factory factory(final EventListener.Factory... factories) {
+    final List<EventListener.Factory> all = List.of(factories);
+    return call -> new CompositeEventListener(all.stream().map(factory -> factory.create(call)).toList());
+  }
+
+  @Override
+  public void callStart(final Call call) {
+    for (final EventListener listener : listeners) {
+      listener.callStart(call);
+    }
+  }
+
+  @Override
+  public void proxySelectStart(final Call call, final HttpUrl url) {
+    for (final EventListener listener : listeners) {
+      listener.proxySelectStart(call, url);
+    }
+  }
+
+  @Override
+  public void proxySelectEnd(final Call call, final HttpUrl url, final List<Proxy> proxies) {
+    for (final EventListener listener : listeners) {
+      listener.proxySelectEnd(call, url, proxies);
+    }
+  }
+
+  @Override
+  public void dnsStart(final Call call, final String domainName) {
+    for (final EventListener listener : listeners) {
+      listener.dnsStart(call, domainName);
+    }
+  }
+
+  @Override
+  public void dnsEnd(final Call call, final String domainName, final List<InetAddress> inetAddressList) {
+    for (final EventListener listener : listeners) {
+      listener.dnsEnd(call, domainName, inetAddressList);
+    }
+  }
+
+  @Override
+  public void connectStart(final Call call, final InetSocketAddress inetSocketAddress, final Proxy proxy) {
+    for (final EventListener listener : listeners) {
+      listener.connectStart(call, inetSocketAddress, proxy);
+    }
+  }
+
+  @Override
+  public void secureConnectStart(final Call call) {
+    for (final EventListener listener : listeners) {
+      listener.secureConnectStart(call);
+    }
+  }
+
+  @Override
+  public void secureConnectEnd(final Call call, final Handshake handshake) {
+    for (final EventListener listener : listeners) {
+      listener.secureConnectEnd(call, handshake);
+    }
+  }
+
+  @Override
+  public void connectEnd(final Call call, final InetSocketAddress inetSocketAddress, final Proxy proxy, final Protocol protocol) {
+    for (final EventListener listener : listeners) {
+      listener.connectEnd(call, inetSocketAddress, proxy, protocol);
+    }
+  }
+
+  @Override
+  public void connectFailed(final Call call, final InetSocketAddress inetSocketAddress, final Proxy proxy, final Protocol protocol,
+      final IOException ioe) {
+    for (final EventListener listener : listeners) {
+      listener.connectFailed(call, inetSocketAddress, proxy, protocol, ioe);
+    }
+  }
+
+  @Override
+  public void connectionAcquired(final Call call, final Connection connection) {
+    for (final EventListener listener : listeners) {
+      listener.connectionAcquired(call, connection);
+    }
+  }
+
+  @Override
+  public void connectionReleased(final Call call, final Connection connection) {
+    for (final EventListener listener : listeners) {
+      listener.connectionReleased(call, connection);
+    }
+  }
+
+  @Override
+  public void requestHeadersStart(final Call call) {
+    for (final EventListener listener : listeners) {
+      listener.requestHeadersStart(call);
+    }
+  }
+
+  @Override
+  public void requestHeadersEnd(final Call call, final Request request) {
+    for (final EventListener listener : listeners) {
+      listener.requestHeadersEnd(call, request);
+    }
+  }
+
+  @Override
+  public void requestBodyStart(final Call call) {
+    for (final EventListener listener : listeners) {
+      listener.requestBodyStart(call);
+    }
+  }
+
+  @Override
+  public void requestBodyEnd(final Call call, final long byteCount) {
+    for (final EventListener listener : listeners) {
+      listener.requestBodyEnd(call, byteCount);
+    }
+  }
+
+  @Override
+  public void requestFailed(final Call call, final IOException ioe) {
+    for (final EventListener listener : listeners) {
+      listener.requestFailed(call, ioe);
+    }
+  }
+
+  @Override
+  public void responseHeadersStart(final Call call) {
+    for (final EventListener listener : listeners) {
+      listener.responseHeadersStart(call);
+    }
+  }
+
+  @Override
+  public void responseHeadersEnd(final Call call, final Response response) {
+    for (final EventListener listener : listeners) {
+      listener.responseHeadersEnd(call, response);
+    }
+  }
+
+  @Override
+  public void responseBodyStart(final Call call) {
+    for (final EventListener listener : listeners) {
+      listener.responseBodyStart(call);
+    }
+  }
+
+  @Override
+  public void responseBodyEnd(final Call call, final long byteCount) {
+    for (final EventListener listener : listeners) {
+      listener.responseBodyEnd(call, byteCount);
+    }
+  }
+
+  @Override
+  public void responseFailed(final Call call, final IOException ioe) {
+    for (final EventListener listener : listeners) {
+      listener.responseFailed(call, ioe);
+    }
+  }
+
+  @Override
+  public void callEnd(final Call call) {
+    for (final EventListener listener : listeners) {
+      listener.callEnd(call);
+    }
+  }
+
+  @Override
+  public void callFailed(final Call call, final IOException ioe) {
+    for (final EventListener listener : listeners) {
+      listener.callFailed(call, ioe);
+    }
+  }
+
+  @Override
+  public void canceled(final Call call) {
+    for (final EventListener listener : listeners) {
+      listener.canceled(call);
+    }
+  }
+
+  @Override
+  public void satisfactionFailure(final Call call, final Response response) {
+    for (final EventListener listener : listeners) {
+      listener.satisfactionFailure(call, response);
+    }
+  }
+
+  @Override
+  public void cacheHit(final Call call, final Response cachedResponse) {
+    for (final EventListener listener : listeners) {
+      listener.cacheHit(call, cachedResponse);
+    }
+  }
+
+  @Override
+  public void cacheMiss(final Call call) {
+    for (final EventListener listener : listeners) {
+      listener.cacheMiss(call);
+    }
+  }
+
+  @Override
+  public void cacheConditionalHit(final Call call, final Response cachedResponseWithNoBody) {
+    for (final EventListener listener : listeners) {
+      listener.cacheConditionalHit(call, cachedResponseWithNoBody);
+    }
+  }
+}
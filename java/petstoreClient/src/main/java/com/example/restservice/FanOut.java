@@ -0,0 +1,146 @@
+/*
+	Copyright NetFoundry Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	https://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+
+package com.example.restservice;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Runs several petstore queries at once instead of one after the other, e.g. findByStatus for every status and a batch of
+ * pet lookups. At most {@code parallelism} queries are in flight, each has its own deadline, and the outcomes are
+ * returned in the order the queries were given, whatever order they complete in.
+ */
+final class FanOut {
+  private static final Logger log = LoggerFactory.getLogger(FanOut.class);
+
+  /**
+   * The result of one query.
+   * @param status the HTTP status, or 0 if no response arrived
+   * @param body the response body, or null if no response arrived
+   * @param failure why no response arrived, or null
+   * @param timedOut whether the query was cancelled by its deadline
+   */
+  record Outcome(String query, int status, String body, long elapsedNanos, IOException failure, boolean timedOut) {
+    boolean isSuccessful() {
+      return status >= 200 && status < 300;
+    }
+  }
+
+  private final OkHttpClient client;
+  private final String baseUrl;
+  private final int parallelism;
+  private final Duration deadline;
+
+  /**
+   * @param client the client to send the queries with. A client derived from it with the deadline shares its pool
+   * @param baseUrl the scheme, host and port every query is appended to
+   * @param parallelism the most queries in flight at once
+   * @param deadline how long each query may take, from when it is sent to the end of its response body
+   */
+  FanOut(final OkHttpClient client, final String baseUrl, final int parallelism, final Duration deadline) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be at least 1");
+    }
+    this.client = client.newBuilder().callTimeout(deadline).build();
+    this.baseUrl = baseUrl;
+    this.parallelism = parallelism;
+    this.deadline = deadline;
+  }
+
+  /**
+   * Sends the queries and waits for all of them to complete or reach their deadline.
+   * @return one outcome per query, in the order of {@code queries}
+   */
+  Result run(final List<String> queries) {
+    log.info("Fanning out {} queries to {}, {} at a time with a {} ms deadline each", queries.size(), baseUrl, parallelism,
+        deadline.toMillis());
+    final long startNanos = System.nanoTime();
+    final List<CompletableFuture<Outcome>> pending = new ArrayList<>(queries.size());
+    // a fixed number of virtual threads bounds the parallelism, the rest of the queries wait in the executor's queue
+    try (final ExecutorService executor = Executors.newFixedThreadPool(parallelism, Thread.ofVirtual().name("fan-out-", 0).factory())) {
+      for (final String query : queries) {
+        pending.add(CompletableFuture.supplyAsync(() -> send(query), executor));
+      }
+      final List<Outcome> outcomes = pending.stream().map(CompletableFuture::join).toList();
+      return new Result(outcomes, System.nanoTime() - startNanos, parallelism);
+    }
+  }
+
+  private Outcome send(final String query) {
+    final Request request = new Request.Builder().url(baseUrl + query).header("Accept", "*/*").get().build();
+    final Call call = client.newCall(request);
+    final long startNanos = System.nanoTime();
+    try (final Response response = call.execute()) {
+      final String body = response.body().string();
+      return new Outcome(query, response.code(), body, System.nanoTime() - startNanos, null, false);
+    } catch (final IOException exception) {
+      // the call timeout cancels the call, which is the only way a call of this client gets cancelled
+      return new Outcome(query, 0, null, System.nanoTime() - startNanos, exception, call.isCanceled());
+    }
+  }
+
+  /**
+   * The outcomes of a fan-out, in query order, and how long it took overall.
+   */
+  record Result(List<Outcome> outcomes, long elapsedNanos, int parallelism) {
+
+    /**
+     * Logs each outcome in query order and a summary comparing the total time with the sum of the queries' own times.
+     * @param logBodies also log the body of each successful response
+     */
+    void report(final boolean logBodies) {
+      long summedNanos = 0;
+      int failed = 0;
+      int timedOut = 0;
+      for (int i = 0; i < outcomes.size(); i++) {
+        final Outcome outcome = outcomes.get(i);
+        summedNanos += outcome.elapsedNanos();
+        final long millis = TimeUnit.NANOSECONDS.toMillis(outcome.elapsedNanos());
+        if (outcome.timedOut()) {
+          timedOut++;
+          log.warn("[{}] {} missed its deadline after {} ms", i + 1, outcome.query(), millis);
+        } else if (outcome.failure() != null) {
+          failed++;
+          log.warn("[{}] {} failed after {} ms: {}", i + 1, outcome.query(), millis, outcome.failure().getMessage());
+        } else if (!outcome.isSuccessful()) {
+          failed++;
+          log.warn("[{}] {} returned {} after {} ms", i + 1, outcome.query(), outcome.status(), millis);
+        } else {
+          log.info("[{}] {} returned {}, {} chars in {} ms", i + 1, outcome.query(), outcome.status(), outcome.body().length(), millis);
+          if (logBodies) {
+            log.info("--- {}", outcome.body());
+          }
+        }
+      }
+      log.info("Fan-out of {} queries took {} ms with parallelism {}, their own times add up to {} ms ({}x). {} failed, {} missed their deadline",
+          outcomes.size(), TimeUnit.NANOSECONDS.toMillis(elapsedNanos), parallelism, TimeUnit.NANOSECONDS.toMillis(summedNanos),
+          String.format("%.1f", elapsedNanos == 0 ? 0 : (double) summedNanos / elapsedNanos), failed, timedOut);
+    }
+  }
+}
@@ -0,0 +1,257 @@
+/*
+	Copyright NetFoundry Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	https://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+
+package com.example.restservice;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import org.HdrHistogram.SynchronizedHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Cuts the tail latency caused by the occasional stalled circuit. A GET that has not been answered after the given
+ * percentile of the latencies seen so far is sent a second time, and whichever response arrives first is returned while
+ * the other attempt is cancelled. Only a few percent of the requests are duplicated, and since the first attempt still
+ * holds its connection, the duplicate goes out on another pooled connection, or dials a new one.
+ * <p>
+ * The attempts are sent with a client that has no interceptors but shares the pool, the dispatcher and the event
+ * listeners, so the pool and phase statistics count each attempt. Requests other than GET are never duplicated and
+ * carry on down the chain of the caller's own client instead.
+ * <p>
+ * The percentile is taken over the latencies of single attempts, each timed from when it was sent. A first attempt
+ * cancelled because its duplicate won counts with the time it was outstanding, a lower bound that still keeps the slow
+ * tail in the histogram. Without it the slow attempts would never be timed, and the delay would keep falling.
+ */
+final class HedgingInterceptor implements Interceptor {
+  private static final Logger log = LoggerFactory.getLogger(HedgingInterceptor.class);
+  // until this many attempts have been timed, the percentile says little and the minimum delay is used
+  private static final int MIN_SAMPLES = 20;
+  // how often a waiting request checks whether its own call was cancelled, e.g. by a deadline
+  private static final long CANCEL_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+  private final OkHttpClient attemptClient;
+  private final double percentile;
+  private final Duration minDelay;
+  private final SynchronizedHistogram latencyMicros = new SynchronizedHistogram(3);
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder hedged = new LongAdder();
+  private final LongAdder hedgeWins = new LongAdder();
+
+  /**
+   * @param attemptClient sends the attempts. It must not have this interceptor
+   * @param percentile the latency percentile after which a request is hedged, e.g. 95
+   * @param minDelay the least time to wait before hedging, also used until enough attempts have been timed
+   */
+  HedgingInterceptor(final OkHttpClient attemptClient, final double percentile, final Duration minDelay) {
+    if (percentile <= 0 || percentile >= 100) {
+      throw new IllegalArgumentException("percentile must be between 0 and 100");
+    }
+    this.attemptClient = attemptClient;
+    this.percentile = percentile;
+    this.minDelay = minDelay;
+  }
+
+  @Override
+  public Response intercept(final Chain chain) throws IOException {
+    final Request request = chain.request();
+    if (!request.method().equals("GET")) {
+      // only idempotent requests can safely be sent twice. Proceeding keeps the call's own deadline and cancellation
+      return chain.proceed(request);
+    }
+    requests.increment();
+    final Race race = new Race(request);
+    race.start(false);
+    if (!race.await(chain.call(), hedgeDelayNanos())) {
+      if (race.start(true)) {
+        hedged.increment();
+      }
+      race.await(chain.call(), Long.MAX_VALUE);
+    }
+    return race.winner();
+  }
+
+  /**
+   * @return how long a request waits now before it is hedged
+   */
+  long hedgeDelayNanos() {
+    if (latencyMicros.getTotalCount() < MIN_SAMPLES) {
+      return minDelay.toNanos();
+    }
+    return Math.max(minDelay.toNanos(), TimeUnit.MICROSECONDS.toNanos(latencyMicros.getValueAtPercentile(percentile)));
+  }
+
+  private void recordLatency(final long sentNanos) {
+    latencyMicros.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - sentNanos));
+  }
+
+  /**
+   * The attempts of one request. The first response wins, and the request fails only if every attempt fails.
+   */
+  private final class Race {
+    private final Request request;
+    private final CompletableFuture<Response> winner = new CompletableFuture<>();
+    private final List<Call> attempts = new CopyOnWriteArrayList<>();
+    // guarded by the race, so an attempt cannot be started once a response has won or every attempt has failed
+    private int running;
+    private boolean decided;
+
+    private Race(final Request request) {
+      this.request = request;
+    }
+
+    /**
+     * @return whether the attempt was sent, which it is not if the race is already over
+     */
+    private boolean start(final boolean hedge) {
+      final Call attempt;
+      synchronized (this) {
+        if (decided) {
+          return false;
+        }
+        attempt = attemptClient.newCall(request);
+        attempts.add(attempt);
+        running++;
+      }
+      final long sentNanos = System.nanoTime();
+      attempt.enqueue(new Callback() {
+        @Override
+        public void onResponse(final Call call, final Response response) {
+          // counted before the response is handed over, so the statistics include it once the caller has it
+          recordLatency(sentNanos);
+          if (!decide()) {
+            response.close();
+            return;
+          }
+          if (hedge) {
+            hedgeWins.increment();
+          }
+          winner.complete(response);
+          attempts.stream().filter(other -> other != call).forEach(Call::cancel);
+        }
+
+        @Override
+        public void onFailure(final Call call, final IOException exception) {
+          final boolean lost;
+          final boolean last;
+          synchronized (Race.this) {
+            lost = decided;
+            last = --running == 0 && decide();
+          }
+          if (!hedge && lost && call.isCanceled()) {
+            // lost to its duplicate. A cancelled duplicate is not counted, it was outstanding for too short a time
+            recordLatency(sentNanos);
+          }
+          if (last) {
+            winner.completeExceptionally(exception);
+          }
+        }
+      });
+      return true;
+    }
+
+    /**
+     * @return whether the caller ended the race, false if it was already over
+     */
+    private synchronized boolean decide() {
+      if (decided) {
+        return false;
+      }
+      decided = true;
+      return true;
+    }
+
+    /**
+     * Waits for the race to finish, giving up on it if the request's own call is cancelled.
+     * @return whether the race finished within the timeout
+     */
+    private boolean await(final Call call, final long timeoutNanos) throws IOException {
+      final long waitStartNanos = System.nanoTime();
+      while (true) {
+        if (call.isCanceled()) {
+          abandon();
+          throw new IOException("Canceled");
+        }
+        final long remainingNanos = timeoutNanos - (System.nanoTime() - waitStartNanos);
+        if (remainingNanos <= 0) {
+          return false;
+        }
+        try {
+          winner.get(Math.min(remainingNanos, CANCEL_CHECK_NANOS), TimeUnit.NANOSECONDS);
+          return true;
+        } catch (final TimeoutException exception) {
+          // not yet, check for cancellation and wait again
+        } catch (final ExecutionException exception) {
+          return true;
+        } catch (final InterruptedException exception) {
+          Thread.currentThread().interrupt();
+          abandon();
+          throw new InterruptedIOException("Interrupted while waiting for a response");
+        }
+      }
+    }
+
+    private Response winner() throws IOException {
+      try {
+        return winner.join();
+      } catch (final CompletionException exception) {
+        // wrapped, so the stack trace shows the caller as well as the dispatcher thread
+        throw exception.getCause() instanceof IOException ioException ? new IOException(ioException.getMessage(), ioException)
+            : new IOException("The request failed", exception.getCause());
+      }
+    }
+
+    private void abandon() {
+      attempts.forEach(Call::cancel);
+      winner.thenAccept(Response::close);
+    }
+  }
+
+  /**
+   * @return how many requests sent a duplicate
+   */
+  long hedgedCount() {
+    return hedged.sum();
+  }
+
+  /**
+   * @return how many duplicates answered before the first attempt
+   */
+  long hedgeWinCount() {
+    return hedgeWins.sum();
+  }
+
+  void logStats() {
+    final long total = requests.sum();
+    log.info("Hedging: {} of {} requests sent a duplicate after the p{} latency ({} ms now), and {} duplicates answered first",
+        hedgedCount(), total, String.format("%.1f", percentile), TimeUnit.NANOSECONDS.toMillis(hedgeDelayNanos()), hedgeWinCount());
+  }
+}
@@ -0,0 +1,173 @@
+/*
+	Copyright NetFoundry Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	https://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+
+package com.example.restservice;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okio.Okio;
+
+/**
+ * Drives a single shared OkHttpClient from many virtual threads and records per-request latency in an HdrHistogram.
+ * <p>
+ * Without a rate the generator runs closed-loop: every worker sends its next request as soon as the previous one
+ * completes. With a rate, requests are scheduled on a fixed global timetable and latency is measured from the
+ * scheduled send time rather than the actual one, so a stalled connection is charged for the requests queued behind it
+ * (coordinated omission correction).
+ */
+final class LoadGenerator {
+  private static final Logger log = LoggerFactory.getLogger(LoadGenerator.class);
+  private static final double[] PERCENTILES = {50.0, 90.0, 99.0, 99.9};
+  private static final String[] PERCENTILE_LABELS = {"p50", "p90", "p99", "p99.9"};
+
+  private final OkHttpClient client;
+  private final Request request;
+  private final int concurrency;
+  private final Duration duration;
+  private final double ratePerSecond;
+
+  /**
+   * @param client the client to drive. All workers share it, and its connection pool
+   * @param url the url requested by every worker
+   * @param concurrency the number of virtual threads issuing requests
+   * @param duration how long to generate load for
+   * @param ratePerSecond the total target request rate, or 0 to send as fast as responses allow
+   */
+  LoadGenerator(final OkHttpClient client, final String url, final int concurrency, final Duration duration,
+      final double ratePerSecond) {
+    if (concurrency < 1) {
+      throw new IllegalArgumentException("concurrency must be at least 1");
+    }
+    this.client = client;
+    this.request = new Request.Builder().url(url).header("Accept", "*/*").get().build();
+    this.concurrency = concurrency;
+    this.duration = duration;
+    this.ratePerSecond = ratePerSecond;
+  }
+
+  Result run() throws InterruptedException {
+    log.info("Generating load against {} with {} virtual threads for {}s{}", request.url(), concurrency, duration.toSeconds(),
+        ratePerSecond > 0 ? String.format(" at %.1f requests/s", ratePerSecond) : "");
+    final long intervalNanos = ratePerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond) : 0;
+    final AtomicLong sequence = new AtomicLong();
+    final long startNanos = System.nanoTime();
+    final long endNanos = startNanos + duration.toNanos();
+
+    final List<Future<Result>> workers = new ArrayList<>(concurrency);
+    try (final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (int i = 0; i < concurrency; i++) {
+        workers.add(executor.submit(() -> runWorker(sequence, startNanos, endNanos, intervalNanos)));
+      }
+    }
+    final Result total = new Result();
+    for (final Future<Result> worker : workers) {
+      try {
+        total.add(worker.get());
+      } catch (final ExecutionException exception) {
+        log.error("Load worker failed", exception.getCause());
+      }
+    }
+    total.elapsedNanos = System.nanoTime() - startNanos;
+    return total;
+  }
+
+  private Result runWorker(final AtomicLong sequence, final long startNanos, final long endNanos, final long intervalNanos) {
+    final Result result = new Result();
+    while (true) {
+      final long scheduledNanos;
+      if (intervalNanos > 0) {
+        scheduledNanos = startNanos + sequence.getAndIncrement() * intervalNanos;
+        if (scheduledNanos >= endNanos) {
+          return result;
+        }
+        for (long wait = scheduledNanos - System.nanoTime(); wait > 0; wait = scheduledNanos - System.nanoTime()) {
+          LockSupport.parkNanos(wait);
+        }
+      } else {
+        scheduledNanos = System.nanoTime();
+        if (scheduledNanos >= endNanos) {
+          return result;
+        }
+      }
+      try (final Response response = client.newCall(request).execute()) {
+        response.body().source().readAll(Okio.blackhole());
+        if (!response.isSuccessful()) {
+          result.errors++;
+        }
+      } catch (final IOException exception) {
+        result.errors++;
+        log.debug("Request failed: {}", exception.getMessage());
+      }
+      result.latencyMicros.recordValue(Math.max(0, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - scheduledNanos)));
+    }
+  }
+
+  /**
+   * Latency and error counts for a load run. Each worker fills its own instance and they are merged once the run ends,
+   * so recording never contends across threads.
+   */
+  static final class Result {
+    private final Histogram latencyMicros = new Histogram(3);
+    private long errors;
+    private long elapsedNanos;
+
+    private void add(final Result other) {
+      latencyMicros.add(other.latencyMicros);
+      errors += other.errors;
+    }
+
+    long requests() {
+      return latencyMicros.getTotalCount();
+    }
+
+    long errors() {
+      return errors;
+    }
+
+    double throughput() {
+      return elapsedNanos == 0 ? 0 : requests() * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    void report() {
+      log.info("Completed {} requests ({} errors) in {} ms: {} requests/s", requests(), errors,
+          TimeUnit.NANOSECONDS.toMillis(elapsedNanos), String.format("%.1f", throughput()));
+      if (requests() == 0) {
+        return;
+      }
+      final StringBuilder percentiles = new StringBuilder();
+      for (int i = 0; i < PERCENTILES.length; i++) {
+        percentiles.append(String.format(" %s=%.2fms", PERCENTILE_LABELS[i], latencyMicros.getValueAtPercentile(PERCENTILES[i]) / 1000.0));
+      }
+      log.info("Latency min={}ms mean={}ms{} max={}ms", String.format("%.2f", latencyMicros.getMinValue() / 1000.0),
+          String.format("%.2f", latencyMicros.getMean() / 1000.0), percentiles, String.format("%.2f", latencyMicros.getMaxValue() / 1000.0));
+    }
+  }
+}
@@ -0,0 +1,35 @@
+/*
+	Copyright NetFoundry Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	https://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+
+package com.example.restservice;
+
+import java.util.List;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * A pet as returned by the petstore v3 API.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+record Pet(long id, String name, Category category, List<String> photoUrls, List<Tag> tags, String status) {
+
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  record Category(long id, String name) {
+  }
+
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  record Tag(long id, String name) {
+  }
+}
@@ -0,0 +1,134 @@
+/*
+	Copyright NetFoundry Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	https://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+
+package com.example.restservice;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.net.SocketFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import okhttp3.Dns;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Compares reading a large findByStatus response with {@code body().string()} against streaming it through
+ * {@link PetStreamReader}. Both variants fetch the same body from a loopback {@link StandInPetstoreServer} with the
+ * shared client and visit every pet. For each it reports throughput, bytes allocated per response and the peak tenured
+ * heap observed while it ran.
+ * <p>
+ * Usage: {@code PetStreamBenchmark [petCount] [iterations]}. Run it with a fixed heap (e.g. {@code -Xms1g -Xmx1g}) and the
+ * default G1 collector, which places large buffered bodies directly in humongous regions where they show up as tenured.
+ */
+public final class PetStreamBenchmark {
+  private static final Logger log = LoggerFactory.getLogger(PetStreamBenchmark.class);
+  private static final int DEFAULT_PET_COUNT = 200_000;
+  private static final int DEFAULT_ITERATIONS = 10;
+  private static final JsonMapper jsonMapper = new JsonMapper();
+
+  private PetStreamBenchmark() {
+    // main class.  No public constructor needed
+  }
+
+  @FunctionalInterface
+  private interface BodyReader {
+    long readPets(Response response) throws IOException;
+  }
+
+  public static void main(final String[] args) throws IOException {
+    final int petCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PET_COUNT;
+    final int iterations = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ITERATIONS;
+    try (final StandInPetstoreServer server = StandInPetstoreServer.start(petCount);
+        final PetstoreHttpClientFactory clientFactory = new PetstoreHttpClientFactory(PetstoreHttpClientFactory.Settings.defaults(),
+            SocketFactory.getDefault(), Dns.SYSTEM)) {
+      final Request request = new Request.Builder().url(server.baseUrl() + "/api/v3/pet/findByStatus?status=available").get().build();
+      final OkHttpClient client = clientFactory.client();
+      final BodyReader buffered = response -> {
+        final String body = response.body().string();
+        final List<Pet> pets = jsonMapper.readValue(body, new TypeReference<List<Pet>>() { });
+        final AtomicLong ids = new AtomicLong();
+        pets.forEach(pet -> ids.addAndGet(pet.id()));
+        return pets.size();
+      };
+      final BodyReader streaming = response -> {
+        final AtomicLong ids = new AtomicLong();
+        return PetStreamReader.readPets(response.body().byteStream(), pet -> ids.addAndGet(pet.id()));
+      };
+      // one untimed pass of each to load classes and warm up the JIT
+      run(client, request, "buffered", buffered, 1, false);
+      run(client, request, "streaming", streaming, 1, false);
+      run(client, request, "buffered", buffered, iterations, true);
+      run(client, request, "streaming", streaming, iterations, true);
+    }
+  }
+
+  private static void run(final OkHttpClient client, final Request request, final String name, final BodyReader reader,
+      final int iterations, final boolean report) throws IOException {
+    final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    System.gc();
+    resetPeakHeap();
+    final long baselineHeap = usedHeap();
+    final long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+    final long start = System.nanoTime();
+    long pets = 0;
+    for (int i = 0; i < iterations; i++) {
+      try (final Response response = client.newCall(request).execute()) {
+        pets += reader.readPets(response);
+      }
+    }
+    final long elapsedNanos = System.nanoTime() - start;
+    final long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+    if (report) {
+      log.info("{}: {} responses, {} pets in {} ms ({} pets/s), {} MB allocated per response, peak tenured heap {} MB above baseline",
+          name, iterations, pets, TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+          String.format("%.0f", pets * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos),
+          String.format("%.1f", allocated / (double) iterations / (1 << 20)),
+          String.format("%.1f", Math.max(0, peakHeap() - baselineHeap) / (double) (1 << 20)));
+    }
+  }
+
+  private static void resetPeakHeap() {
+    heapPools().forEach(MemoryPoolMXBean::resetPeakUsage);
+  }
+
+  private static long peakHeap() {
+    return heapPools().stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+  }
+
+  private static long usedHeap() {
+    return heapPools().stream().mapToLong(pool -> pool.getUsage().getUsed()).sum();
+  }
+
+  /**
+   * The heap pools objects live in once they outlast a young collection. Eden fills to its capacity under any
+   * allocation-heavy loop, so only the tenured pools, where large buffered bodies end up, tell the variants apart.
+   */
+  private static List<MemoryPoolMXBean> heapPools() {
+    return ManagementFactory.getMemoryPoolMXBeans().stream()
+        .filter(pool -> pool.getType() == MemoryType.HEAP)
+        .filter(pool -> !pool.getName().contains("Eden") && !pool.getName().contains("Survivor"))
+        .toList();
+  }
+}
@@ -0,0 +1,67 @@
+/*
+	Copyright NetFoundry Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	https://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+
+package com.example.restservice;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+
+/**
+ * Reads petstore responses incrementally with Jackson's streaming {@link JsonParser}, binding one {@link Pet} at a time
+ * and handing it to a callback as soon as it has been read. Only the pet currently being bound is held in memory, so
+ * heap use does not grow with the size of a findByStatus result the way reading the whole body into a String does.
+ */
+final class PetStreamReader {
+  private static final JsonMapper jsonMapper = JsonMapper.builder().disable(StreamReadFeature.AUTO_CLOSE_SOURCE).build();
+
+  private PetStreamReader() {
+    // utility class.  No public constructor needed
+  }
+
+  /**
+   * Reads either a JSON array of pets (findByStatus, findByTags) or a single pet object (pet/{id}).
+   * @param json the response body. It is read to the end of the JSON value but not closed
+   * @param petConsumer called with each pet in document order
+   * @return the number of pets read
+   * @throws IOException if the body cannot be read or is not a pet or array of pets
+   */
+  static long readPets(final InputStream json, final Consumer<Pet> petConsumer) throws IOException {
+    try (final JsonParser parser = jsonMapper.createParser(json)) {
+      final JsonToken first = parser.nextToken();
+      if (first == JsonToken.START_OBJECT) {
+        petConsumer.accept(jsonMapper.readValue(parser, Pet.class));
+        return 1;
+      }
+      if (first != JsonToken.START_ARRAY) {
+        throw new IOException("Expected a pet or an array of pets but found " + first);
+      }
+      long count = 0;
+      while (parser.nextToken() == JsonToken.START_OBJECT) {
+        petConsumer.accept(jsonMapper.readValue(parser, Pet.class));
+        count++;
+      }
+      if (parser.currentToken() != JsonToken.END_ARRAY) {
+        throw new IOException("Expected a pet object in the array but found " + parser.currentToken());
+      }
+      return count;
+    }
+  }
+}
@@ -16,13 +16,25 @@
 
 package com.example.restservice;
 
-import static com.example.demoutils.AperitivoUtils.DEFAULT_ZITI_IDENTITY_FILE;
+import static com.example.demoutils.AperitivoClient.DEFAULT_APERITIVO_URL;
+import static com.example.demoutils.AperitivoClient.DEFAULT_PKCS12_IDENTITY_FILE;
 import static java.lang.System.exit;
 import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
-import java.util.Collections;
-import java.util.Optional;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import javax.net.SocketFactory;
+import okhttp3.Dns;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Request.Builder;
@@ -38,7 +50,10 @@ import org.openziti.Ziti;
 import org.openziti.ZitiContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import com.example.demoutils.AperitivoUtils;
+import com.example.demoutils.AperitivoClient;
+import com.example.demoutils.ContextActivation;
+import com.example.demoutils.SimulatedOverlay;
+import com.example.demoutils.StartupTimer;
 
 /**
  * This example is a simple Java client that connects to a dark Petstore server using OpenZiti.
@@ -46,28 +61,154 @@ import com.example.demoutils.AperitivoUtils;
  public class PetstoreClient {
   private static final Logger log = LoggerFactory.getLogger(PetstoreClient.class);
   private static final String APERITIVO_URL_OPTION = "aperitivoUrl";
-  private static final String DEFAULT_APERITIVO_URL = "https://aperitivo.production.netfoundry.io";
   private static final String DEFAULT_QUERY = "/api/v3/pet/findByStatus?status=available";
   private static final String IDENTITY_OPTION = "identityFile";
   private static final String HELP_OPTION = "help";
   private static final String QUERY_OPTION = "query";
+  private static final String LOAD_OPTION = "load";
+  private static final String CONCURRENCY_OPTION = "concurrency";
+  private static final String DURATION_OPTION = "duration";
+  private static final String RATE_OPTION = "rate";
+  private static final String LOCAL_OPTION = "local";
+  private static final String POOL_SIZE_OPTION = "poolSize";
+  private static final String KEEP_ALIVE_OPTION = "keepAlive";
+  private static final String MAX_REQUESTS_PER_HOST_OPTION = "maxRequestsPerHost";
+  private static final String HTTP2_OPTION = "http2";
+  private static final String STREAM_OPTION = "stream";
+  private static final String DNS_TTL_OPTION = "dnsTtl";
+  private static final String DNS_NEGATIVE_TTL_OPTION = "dnsNegativeTtl";
+  private static final String TIMING_REPORT_OPTION = "timingReport";
+  private static final String PHASE_LOG_OPTION = "phaseLog";
+  private static final String PREWARM_OPTION = "prewarm";
+  private static final String FAN_OUT_OPTION = "fanOut";
+  private static final String PARALLELISM_OPTION = "parallelism";
+  private static final String DEADLINE_OPTION = "deadline";
+  private static final String HEDGE_OPTION = "hedge";
+  private static final String HEDGE_DELAY_OPTION = "hedgeDelay";
+  private static final String BREAKER_OPTION = "breaker";
+  private static final String BREAKER_COOL_DOWN_OPTION = "breakerCoolDown";
+  private static final String SIM_LATENCY_OPTION = "simLatency";
+  private static final String SIM_JITTER_OPTION = "simJitter";
+  private static final String SIM_BANDWIDTH_OPTION = "simBandwidth";
+  private static final String SIM_CONNECT_DELAY_OPTION = "simConnectDelay";
+  private static final List<String> SIM_OPTIONS = List.of(SIM_LATENCY_OPTION, SIM_JITTER_OPTION, SIM_BANDWIDTH_OPTION,
+      SIM_CONNECT_DELAY_OPTION);
+  private static final String IDENTITY_FILES_OPTION = "identityFiles";
+  private static final String CONTEXTS_OPTION = "contexts";
+  private static final String SELECTION_OPTION = "selection";
+  private static final int DEFAULT_DNS_TTL_SECONDS = 60;
+  private static final int DEFAULT_DNS_NEGATIVE_TTL_SECONDS = 5;
+  private static final int DEFAULT_CONCURRENCY = 16;
+  private static final int DEFAULT_DURATION_SECONDS = 30;
+  private static final int DEFAULT_PARALLELISM = 8;
+  private static final int DEFAULT_DEADLINE_MILLIS = 10000;
+  private static final int LOCAL_PET_COUNT = 20;
+  private static final Duration PREWARM_TIMEOUT = Duration.ofSeconds(30);
 
   public static void main(final String[] args) {
+    StartupTimer.begin(StartupTimer.Phase.PARSE_OPTIONS);
     final CommandLine cmdLine = parseCommandLineOptions(args);
+    StartupTimer.end(StartupTimer.Phase.PARSE_OPTIONS);
+    final String petstoreQuery = cmdLine.getOptionValue(QUERY_OPTION, DEFAULT_QUERY);
+    if (cmdLine.hasOption(LOCAL_OPTION)) {
+      callStandInPetstore(cmdLine, petstoreQuery);
+      reportStartupTiming(cmdLine);
+      exit(0);
+    }
+    if (cmdLine.hasOption(IDENTITY_FILES_OPTION) || cmdLine.hasOption(CONTEXTS_OPTION)) {
+      connectZitiContextPool(cmdLine, petstoreQuery);
+      reportStartupTiming(cmdLine);
+      exit(0);
+    }
     final ZitiContext zitiContext = checkCreateIdentity(cmdLine);
     // Simple demo that uses the identity and service to perform a http request to that service
-    connectZitiService(zitiContext, cmdLine.getOptionValue(QUERY_OPTION, DEFAULT_QUERY));
+    connectZitiService(zitiContext, cmdLine, petstoreQuery);
+    reportStartupTiming(cmdLine);
     exit(0);
   }
 
+  private static void reportStartupTiming(final CommandLine cmdLine) {
+    StartupTimer.logSummary();
+    if (cmdLine.hasOption(TIMING_REPORT_OPTION)) {
+      try {
+        StartupTimer.writeReport(Path.of(cmdLine.getOptionValue(TIMING_REPORT_OPTION)));
+      } catch (final IOException exception) {
+        log.error("Could not write the startup timing report: {}", exception.getMessage());
+      }
+    }
+  }
+
   private static CommandLine parseCommandLineOptions(final String[] args) {
     final Options options = new Options();
     options.addOption(Option.builder().option("a").longOpt(APERITIVO_URL_OPTION).hasArg(true)
         .desc(String.format("URL for the aperitivo service. Defaults to '%s'", DEFAULT_APERITIVO_URL)).build());
     options.addOption(Option.builder().option("i").longOpt(IDENTITY_OPTION).hasArg(true)
-        .desc(String.format("Identity file, json or pkcs12. Defaults to '%s'", DEFAULT_ZITI_IDENTITY_FILE)).build());
+        .desc(String.format("Identity file, json or pkcs12. Defaults to '%s'", DEFAULT_PKCS12_IDENTITY_FILE)).build());
     options.addOption(Option.builder().option("q").longOpt(QUERY_OPTION).hasArg(true)
         .desc(String.format("Petstore query. Defaults to '%s'", DEFAULT_QUERY)).build());
+    options.addOption(Option.builder().option("s").longOpt(STREAM_OPTION)
+        .desc("Parse the response as a stream of pets instead of reading the whole body").build());
+    options.addOption(Option.builder().option("l").longOpt(LOAD_OPTION)
+        .desc("Generate load against the query instead of calling it once").build());
+    options.addOption(Option.builder().option("c").longOpt(CONCURRENCY_OPTION).hasArg(true)
+        .desc(String.format("Load mode: number of virtual threads sending requests. Defaults to %d", DEFAULT_CONCURRENCY)).build());
+    options.addOption(Option.builder().option("d").longOpt(DURATION_OPTION).hasArg(true)
+        .desc(String.format("Load mode: seconds to generate load for. Defaults to %d", DEFAULT_DURATION_SECONDS)).build());
+    options.addOption(Option.builder().option("r").longOpt(RATE_OPTION).hasArg(true)
+        .desc("Load mode: total target requests per second. Defaults to unthrottled").build());
+    options.addOption(Option.builder().option("f").longOpt(FAN_OUT_OPTION).hasArg(true)
+        .desc("Fan-out mode: comma separated queries to run concurrently, or @file with one query per line").build());
+    options.addOption(Option.builder().longOpt(PARALLELISM_OPTION).hasArg(true)
+        .desc(String.format("Fan-out mode: queries in flight at once. Defaults to %d", DEFAULT_PARALLELISM)).build());
+    options.addOption(Option.builder().longOpt(DEADLINE_OPTION).hasArg(true)
+        .desc(String.format("Fan-out mode: ms each query may take before it is cancelled. Defaults to %d", DEFAULT_DEADLINE_MILLIS)).build());
+    options.addOption(Option.builder().longOpt(LOCAL_OPTION)
+        .desc("Call a local stand-in petstore over loopback instead of the OpenZiti network").build());
+    options.addOption(Option.builder().longOpt(SIM_LATENCY_OPTION).hasArg(true)
+        .desc("With --local, reach the stand-in through a simulated overlay adding this one-way latency in ms").build());
+    options.addOption(Option.builder().longOpt(SIM_JITTER_OPTION).hasArg(true)
+        .desc("With --local, up to this many ms of random delay added to the simulated latency and connection setup").build());
+    options.addOption(Option.builder().longOpt(SIM_BANDWIDTH_OPTION).hasArg(true)
+        .desc("With --local, cap each direction of a simulated connection to this many KiB/s").build());
+    options.addOption(Option.builder().longOpt(SIM_CONNECT_DELAY_OPTION).hasArg(true)
+        .desc("With --local, ms a simulated connection takes to dial").build());
+    options.addOption(Option.builder().longOpt(POOL_SIZE_OPTION).hasArg(true)
+        .desc(String.format("Idle connections kept in the HTTP connection pool. Defaults to %d",
+            PetstoreHttpClientFactory.Settings.DEFAULT_MAX_IDLE_CONNECTIONS)).build());
+    options.addOption(Option.builder().longOpt(KEEP_ALIVE_OPTION).hasArg(true)
+        .desc(String.format("Seconds an idle pooled connection is kept open. Defaults to %d",
+            PetstoreHttpClientFactory.Settings.DEFAULT_KEEP_ALIVE_SECONDS)).build());
+    options.addOption(Option.builder().longOpt(MAX_REQUESTS_PER_HOST_OPTION).hasArg(true)
+        .desc(String.format("Concurrent asynchronous requests allowed per host. Defaults to %d",
+            PetstoreHttpClientFactory.Settings.DEFAULT_MAX_REQUESTS_PER_HOST)).build());
+    options.addOption(Option.builder().longOpt(PREWARM_OPTION).hasArg(true)
+        .desc("Open this many keep-alive connections to the petstore before the first request and park them in the pool").build());
+    options.addOption(Option.builder().longOpt(HTTP2_OPTION)
+        .desc("Use cleartext HTTP/2 with prior knowledge. The petstore server must support h2c").build());
+    options.addOption(Option.builder().longOpt(HEDGE_OPTION).hasArg(true)
+        .desc("Send a duplicate of a GET not answered after this latency percentile, e.g. 95, and use the first response").build());
+    options.addOption(Option.builder().longOpt(HEDGE_DELAY_OPTION).hasArg(true)
+        .desc(String.format("The least ms to wait before hedging, also used until enough responses have been timed. Defaults to %d",
+            PetstoreHttpClientFactory.Settings.DEFAULT_HEDGE_MIN_DELAY_MILLIS)).build());
+    options.addOption(Option.builder().longOpt(BREAKER_OPTION).hasArg(true)
+        .desc("Fail requests fast once this many in a row have failed or timed out").build());
+    options.addOption(Option.builder().longOpt(BREAKER_COOL_DOWN_OPTION).hasArg(true)
+        .desc(String.format("Seconds the circuit breaker fails fast before it sends a trial request. Defaults to %d",
+            PetstoreHttpClientFactory.Settings.DEFAULT_BREAKER_COOL_DOWN_SECONDS)).build());
+    options.addOption(Option.builder().longOpt(DNS_TTL_OPTION).hasArg(true)
+        .desc(String.format("Seconds a resolved address is cached. Defaults to %d", DEFAULT_DNS_TTL_SECONDS)).build());
+    options.addOption(Option.builder().longOpt(DNS_NEGATIVE_TTL_OPTION).hasArg(true)
+        .desc(String.format("Seconds a failed lookup is cached. Defaults to %d", DEFAULT_DNS_NEGATIVE_TTL_SECONDS)).build());
+    options.addOption(Option.builder().longOpt(IDENTITY_FILES_OPTION).hasArg(true)
+        .desc("Comma separated identity files. Connections are spread over one context per identity").build());
+    options.addOption(Option.builder().longOpt(CONTEXTS_OPTION).hasArg(true)
+        .desc("Spread connections over this many contexts, provisioning the identities from aperitivo as needed").build());
+    options.addOption(Option.builder().longOpt(SELECTION_OPTION).hasArg(true)
+        .desc("How a context is chosen for each connection, round-robin or least-connections. Defaults to round-robin").build());
+    options.addOption(Option.builder().longOpt(TIMING_REPORT_OPTION).hasArg(true)
+        .desc("Write the duration of each startup phase to this file as JSON").build());
+    options.addOption(Option.builder().longOpt(PHASE_LOG_OPTION).hasArg(true)
+        .desc("Write the DNS, dial, TLS, first byte and body time of each request to this file as JSON lines").build());
     options.addOption(Option.builder().option("h").longOpt(HELP_OPTION).desc("Show this help text").build());
     CommandLine commandLine = null;
     try {
@@ -86,36 +227,65 @@ import com.example.demoutils.AperitivoUtils;
     return commandLine;
   }
 
+  private static double numericOption(final CommandLine cmdLine, final String option, final double defaultValue) {
+    if (!cmdLine.hasOption(option)) {
+      return defaultValue;
+    }
+    try {
+      return Double.parseDouble(cmdLine.getOptionValue(option));
+    } catch (final NumberFormatException exception) {
+      log.error("Option --{} expects a number but was '{}'", option, cmdLine.getOptionValue(option));
+      exit(1);
+      return defaultValue;
+    }
+  }
+
   private static ZitiContext loadIdentity(final String identityFile) {
     log.info("Attempting to connect to ziti using identity stored in {}", identityFile);
+    StartupTimer.begin(StartupTimer.Phase.ZITI_INIT);
     Ziti.init(identityFile, "".toCharArray(), false);
+    StartupTimer.end(StartupTimer.Phase.ZITI_INIT);
+    StartupTimer.begin(StartupTimer.Phase.CONTEXT_ACTIVE);
     final ZitiContext zitiContext = Ziti.getContexts().stream().findFirst().orElseThrow(() -> {
       log.error("Could not establish a Ziti context using the identity {}", identityFile);
       return new IllegalArgumentException("Could not create a ZitiContext");
     });
-    if (!zitiContext.getStatus().toString().equals("Active")) {
-      log.warn("Failed to establish a ziti context, status: {}.", zitiContext.getStatus());
-      if (zitiContext.getStatus().toString().equals("NotAuthorized")) {
+    // Ziti.init returns while the context is still authenticating, this is the wait the phase times
+    final String status = ContextActivation.awaitLoaded(zitiContext, ContextActivation.DEFAULT_TIMEOUT);
+    if (!status.equals("Active")) {
+      log.warn("Failed to establish a ziti context, status: {}.", status);
+      if (status.equals("NotAuthorized")) {
         log.error("Cannot authenticate with the configured identity. If using '{}', try deleting this saved identity file and trying again",
-            DEFAULT_ZITI_IDENTITY_FILE);
+            DEFAULT_PKCS12_IDENTITY_FILE);
       }
       throw new IllegalArgumentException("Could not authenticate the ZitiContext from: " + identityFile);
     }
+    StartupTimer.end(StartupTimer.Phase.CONTEXT_ACTIVE);
     return zitiContext;
   }
 
   private static ZitiContext checkCreateIdentity(final CommandLine cmdLine) {
     if (cmdLine.hasOption(IDENTITY_OPTION)) {
       return loadIdentity(cmdLine.getOptionValue(IDENTITY_OPTION));
-    } else if (new File(DEFAULT_ZITI_IDENTITY_FILE).exists()) {
-      return loadIdentity(DEFAULT_ZITI_IDENTITY_FILE);
+    } else if (new File(DEFAULT_PKCS12_IDENTITY_FILE).exists()) {
+      return loadIdentity(DEFAULT_PKCS12_IDENTITY_FILE);
     } else {
-      return loadIdentity(AperitivoUtils.createIdentityKeystore(
-          cmdLine.getOptionValue(APERITIVO_URL_OPTION, DEFAULT_APERITIVO_URL)));
+      return loadIdentity(provisionIdentity(cmdLine));
     }
   }
 
-  private static void connectZitiService(final ZitiContext zitiContext, final String petstoreQuery) {
+  private static String provisionIdentity(final CommandLine cmdLine) {
+    final AperitivoClient aperitivo = new AperitivoClient(cmdLine.getOptionValue(APERITIVO_URL_OPTION, DEFAULT_APERITIVO_URL));
+    try {
+      return aperitivo.provision(Path.of(DEFAULT_PKCS12_IDENTITY_FILE), AperitivoClient.pkcs12Keystore()).join().toString();
+    } catch (final CompletionException exception) {
+      log.error("Could not get an identity from aperitivo: {}", exception.getCause().getMessage());
+      exit(2);
+      return null;
+    }
+  }
+
+  private static void connectZitiService(final ZitiContext zitiContext, final CommandLine cmdLine, final String petstoreQuery) {
 
     if (zitiContext == null) {
       throw new IllegalArgumentException("No Ziti context ");
@@ -125,40 +295,19 @@ import com.example.demoutils.AperitivoUtils;
       log.info("Connected to ziti using identity {}", zitiContext.name());
 
       // throws an exception if the service cannot be found within the specified time
+      StartupTimer.begin(StartupTimer.Phase.SERVICE_AVAILABLE);
       zitiContext.getService("PetstoreDemo", 10000);
+      StartupTimer.end(StartupTimer.Phase.SERVICE_AVAILABLE);
 
-      // we could use the service.getConfig("intercept.v1", JsonNode.class) to load the address and port range to hit for the
-      // service but for this demo, just use what we know about the petstore service
-      log.info("Calling PetstoreDemo with url: {}", "http://petstore.ziti" + petstoreQuery);
-      final Request httpRequest = new Builder()
-          .url(String.format("http://%s:%d%s", "petstore.ziti", 80, petstoreQuery))
-          .header("Accept", "*/*")
-          .get()
-          .build();
       // This demonstrates using a third-party HTTP client, like OkHttp, with OpenZiti.  To do so,
       // replace the socketFactory and DNSResolver of the client with those provided by OpenZiti.
       // By doing this, the OpenZiti service's intercept address "petstore.ziti" becomes addressable
       // just like any other address
-      final OkHttpClient client = new OkHttpClient.Builder()
-          .followRedirects(true)
-          .socketFactory(Ziti.getSocketFactory())
-          .dns(hostname -> {
-            InetAddress address = Ziti.getDNSResolver().resolve(hostname);
-            if (address == null) {
-              address = InetAddress.getByName(hostname);
-            }
-            return Optional.ofNullable(address).map(Collections::singletonList).orElse(Collections.emptyList());
-          })
-          .build();
-      try (final Response response = client.newCall(httpRequest).execute()) {
-        log.info("Reading response");
-        if (response.code() == 200) {
-          log.info("--- {}", response.body().string());
-        } else {
-          log.error("Response code {} received", response.code());
-        }
-      } catch (final IOException exception) {
-        log.error("IOException on http call received: ", exception);
+      try (final PetstoreHttpClientFactory clientFactory = new PetstoreHttpClientFactory(clientSettings(cmdLine),
+          Ziti.getSocketFactory(), cachingDns(cmdLine, zitiDns()), phaseLog(cmdLine))) {
+        // we could use the service.getConfig("intercept.v1", JsonNode.class) to load the address and port range to hit for the
+        // service but for this demo, just use what we know about the petstore service
+        callPetstore(cmdLine, clientFactory, String.format("http://%s:%d", "petstore.ziti", 80), petstoreQuery);
       }
     }
     finally {
@@ -166,4 +315,218 @@ import com.example.demoutils.AperitivoUtils;
       Ziti.removeContext(zitiContext);
     }
   }
+
+  private static Dns zitiDns() {
+    return zitiDns(Ziti.getDNSResolver()::resolve);
+  }
+
+  /**
+   * Resolves intercepted names through the resolver and everything else through the system DNS.
+   * @param resolver returns the address of an intercepted name, or null for any other name
+   */
+  static Dns zitiDns(final Function<String, InetAddress> resolver) {
+    return hostname -> {
+      final InetAddress address = resolver.apply(hostname);
+      return address != null ? List.of(address) : Dns.SYSTEM.lookup(hostname);
+    };
+  }
+
+  /**
+   * The same as {@link #connectZitiService}, but every new connection is dialed through one of several contexts.
+   */
+  private static void connectZitiContextPool(final CommandLine cmdLine, final String petstoreQuery) {
+    final ZitiContextPool.Selection selection = selectionOption(cmdLine.getOptionValue(SELECTION_OPTION, "round-robin"));
+    final int contexts = (int) numericOption(cmdLine, CONTEXTS_OPTION, 1);
+    if (contexts < 1) {
+      log.error("Option --{} expects at least 1 context but was {}", CONTEXTS_OPTION, contexts);
+      exit(1);
+    }
+    ZitiContextPool contextPool = null;
+    try {
+      contextPool = cmdLine.hasOption(IDENTITY_FILES_OPTION)
+          ? ZitiContextPool.load(Arrays.stream(cmdLine.getOptionValue(IDENTITY_FILES_OPTION).split(",")).map(file -> Path.of(file.trim())).toList(),
+              selection)
+          : ZitiContextPool.provision(new AperitivoClient(cmdLine.getOptionValue(APERITIVO_URL_OPTION, DEFAULT_APERITIVO_URL)),
+              contexts, selection);
+    } catch (final CompletionException exception) {
+      log.error("Could not get an identity from aperitivo: {}", exception.getCause().getMessage());
+      exit(2);
+    }
+    try (final ZitiContextPool pool = contextPool) {
+      StartupTimer.begin(StartupTimer.Phase.SERVICE_AVAILABLE);
+      pool.awaitService("PetstoreDemo", 10000);
+      StartupTimer.end(StartupTimer.Phase.SERVICE_AVAILABLE);
+      try (final PetstoreHttpClientFactory clientFactory = new PetstoreHttpClientFactory(clientSettings(cmdLine),
+          pool.socketFactory(), cachingDns(cmdLine, zitiDns()), phaseLog(cmdLine))) {
+        callPetstore(cmdLine, clientFactory, String.format("http://%s:%d", "petstore.ziti", 80), petstoreQuery);
+      }
+      pool.logStats();
+    }
+  }
+
+  private static ZitiContextPool.Selection selectionOption(final String selection) {
+    try {
+      return ZitiContextPool.Selection.valueOf(selection.toUpperCase(Locale.ROOT).replace('-', '_'));
+    } catch (final IllegalArgumentException exception) {
+      log.error("Unknown context selection '{}'. Use round-robin or least-connections", selection);
+      exit(1);
+      return ZitiContextPool.Selection.ROUND_ROBIN;
+    }
+  }
+
+  private static void callStandInPetstore(final CommandLine cmdLine, final String petstoreQuery) {
+    // The same client setup as over OpenZiti, but with the platform socket factory and DNS, or with a simulated overlay
+    try (final StandInPetstoreServer server = StandInPetstoreServer.start(LOCAL_PET_COUNT)) {
+      if (SIM_OPTIONS.stream().noneMatch(cmdLine::hasOption)) {
+        try (final PetstoreHttpClientFactory clientFactory = new PetstoreHttpClientFactory(clientSettings(cmdLine),
+            SocketFactory.getDefault(), cachingDns(cmdLine, Dns.SYSTEM), phaseLog(cmdLine))) {
+          callPetstore(cmdLine, clientFactory, server.baseUrl(), petstoreQuery);
+        }
+        return;
+      }
+      final URI baseUrl = URI.create(server.baseUrl());
+      final SimulatedOverlay overlay = new SimulatedOverlay(simulatedConditions(cmdLine))
+          .route("petstore.ziti", new InetSocketAddress(baseUrl.getHost(), baseUrl.getPort()));
+      log.info("Simulating the overlay: {}", overlay.conditions());
+      try (final PetstoreHttpClientFactory clientFactory = new PetstoreHttpClientFactory(clientSettings(cmdLine),
+          overlay.socketFactory(), cachingDns(cmdLine, zitiDns(overlay::resolve)), phaseLog(cmdLine))) {
+        callPetstore(cmdLine, clientFactory, String.format("http://%s:%d", "petstore.ziti", 80), petstoreQuery);
+      }
+    } catch (final IOException exception) {
+      log.error("Could not start the stand-in petstore: ", exception);
+    }
+  }
+
+  private static SimulatedOverlay.Conditions simulatedConditions(final CommandLine cmdLine) {
+    return new SimulatedOverlay.Conditions(
+        Duration.ofMillis((long) numericOption(cmdLine, SIM_LATENCY_OPTION, 0)),
+        Duration.ofMillis((long) numericOption(cmdLine, SIM_JITTER_OPTION, 0)),
+        (long) (numericOption(cmdLine, SIM_BANDWIDTH_OPTION, 0) * 1024),
+        Duration.ofMillis((long) numericOption(cmdLine, SIM_CONNECT_DELAY_OPTION, 0)));
+  }
+
+  private static CachingDns cachingDns(final CommandLine cmdLine, final Dns dns) {
+    return new CachingDns(dns,
+        Duration.ofSeconds((long) numericOption(cmdLine, DNS_TTL_OPTION, DEFAULT_DNS_TTL_SECONDS)),
+        Duration.ofSeconds((long) numericOption(cmdLine, DNS_NEGATIVE_TTL_OPTION, DEFAULT_DNS_NEGATIVE_TTL_SECONDS)));
+  }
+
+  private static Path phaseLog(final CommandLine cmdLine) {
+    return cmdLine.hasOption(PHASE_LOG_OPTION) ? Path.of(cmdLine.getOptionValue(PHASE_LOG_OPTION)) : null;
+  }
+
+  private static PetstoreHttpClientFactory.Settings clientSettings(final CommandLine cmdLine) {
+    final int maxRequestsPerHost = (int) numericOption(cmdLine, MAX_REQUESTS_PER_HOST_OPTION,
+        PetstoreHttpClientFactory.Settings.DEFAULT_MAX_REQUESTS_PER_HOST);
+    final double hedgePercentile = numericOption(cmdLine, HEDGE_OPTION, 0);
+    if (cmdLine.hasOption(HEDGE_OPTION) && (hedgePercentile <= 0 || hedgePercentile >= 100)) {
+      log.error("Option --{} expects a percentile between 0 and 100 but was {}", HEDGE_OPTION, hedgePercentile);
+      exit(1);
+    }
+    return new PetstoreHttpClientFactory.Settings(
+        (int) numericOption(cmdLine, POOL_SIZE_OPTION, PetstoreHttpClientFactory.Settings.DEFAULT_MAX_IDLE_CONNECTIONS),
+        Duration.ofSeconds((long) numericOption(cmdLine, KEEP_ALIVE_OPTION, PetstoreHttpClientFactory.Settings.DEFAULT_KEEP_ALIVE_SECONDS)),
+        Math.max(PetstoreHttpClientFactory.Settings.DEFAULT_MAX_REQUESTS, maxRequestsPerHost),
+        maxRequestsPerHost,
+        cmdLine.hasOption(HTTP2_OPTION),
+        hedgePercentile,
+        Duration.ofMillis((long) numericOption(cmdLine, HEDGE_DELAY_OPTION, PetstoreHttpClientFactory.Settings.DEFAULT_HEDGE_MIN_DELAY_MILLIS)),
+        (int) numericOption(cmdLine, BREAKER_OPTION, 0),
+        Duration.ofSeconds((long) numericOption(cmdLine, BREAKER_COOL_DOWN_OPTION,
+            PetstoreHttpClientFactory.Settings.DEFAULT_BREAKER_COOL_DOWN_SECONDS)));
+  }
+
+  private static void callPetstore(final CommandLine cmdLine, final PetstoreHttpClientFactory clientFactory, final String baseUrl,
+      final String petstoreQuery) {
+    final String url = baseUrl + petstoreQuery;
+    if (cmdLine.hasOption(PREWARM_OPTION)) {
+      prewarm(clientFactory, url, (int) numericOption(cmdLine, PREWARM_OPTION, 0));
+    }
+    if (cmdLine.hasOption(FAN_OUT_OPTION)) {
+      final FanOut fanOut = new FanOut(clientFactory.client(), baseUrl,
+          (int) numericOption(cmdLine, PARALLELISM_OPTION, DEFAULT_PARALLELISM),
+          Duration.ofMillis((long) numericOption(cmdLine, DEADLINE_OPTION, DEFAULT_DEADLINE_MILLIS)));
+      fanOut.run(fanOutQueries(cmdLine.getOptionValue(FAN_OUT_OPTION))).report(true);
+    } else if (cmdLine.hasOption(LOAD_OPTION)) {
+      generateLoad(cmdLine, clientFactory.client(), url);
+    } else {
+      callPetstoreOnce(clientFactory.client(), url, cmdLine.hasOption(STREAM_OPTION));
+    }
+    clientFactory.logStats();
+  }
+
+  /**
+   * @param queries comma separated queries, or {@code @} and the name of a file with one query per line. Blank lines and
+   *     lines starting with {@code #} in the file are skipped
+   */
+  private static List<String> fanOutQueries(final String queries) {
+    List<String> lines = List.of();
+    try {
+      lines = queries.startsWith("@") ? Files.readAllLines(Path.of(queries.substring(1))) : Arrays.asList(queries.split(","));
+    } catch (final IOException exception) {
+      log.error("Could not read the fan-out queries from {}: {}", queries.substring(1), exception.getMessage());
+      exit(1);
+    }
+    final List<String> fanOutQueries = lines.stream().map(String::trim).filter(line -> !line.isEmpty() && !line.startsWith("#")).toList();
+    if (fanOutQueries.isEmpty()) {
+      log.error("No queries to fan out in '{}'", queries);
+      exit(1);
+    }
+    return fanOutQueries;
+  }
+
+  private static void prewarm(final PetstoreHttpClientFactory clientFactory, final String url, final int connections) {
+    log.info("Pre-warming {} connections to {}", connections, url);
+    StartupTimer.begin(StartupTimer.Phase.PREWARM);
+    final long start = System.nanoTime();
+    try {
+      final int idle = clientFactory.prewarm(url, connections, PREWARM_TIMEOUT);
+      log.info("Pre-warmed the connection pool in {} ms, it holds {} idle connections",
+          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), idle);
+    } catch (final InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      log.warn("Pre-warming interrupted");
+    }
+    StartupTimer.end(StartupTimer.Phase.PREWARM);
+  }
+
+  private static void callPetstoreOnce(final OkHttpClient client, final String url, final boolean stream) {
+    log.info("Calling PetstoreDemo with url: {}", url);
+    final Request httpRequest = new Builder()
+        .url(url)
+        .header("Accept", "*/*")
+        .get()
+        .build();
+    // cold if the request has to dial its connection, warm if the pool was pre-warmed
+    final boolean warm = client.connectionPool().idleConnectionCount() > 0;
+    final long start = System.nanoTime();
+    try (final Response response = client.newCall(httpRequest).execute()) {
+      log.info("First response after {} ms ({}, {})", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+          warm ? "warm" : "cold", warm ? "on a pre-warmed connection" : "including the dial");
+      log.info("Reading response");
+      if (response.code() == 200 && stream) {
+        final long pets = PetStreamReader.readPets(response.body().byteStream(), pet -> log.info("--- {}", pet));
+        log.info("Read {} pets", pets);
+      } else if (response.code() == 200) {
+        log.info("--- {}", response.body().string());
+      } else {
+        log.error("Response code {} received", response.code());
+      }
+    } catch (final IOException exception) {
+      log.error("IOException on http call received: ", exception);
+    }
+  }
+
+  private static void generateLoad(final CommandLine cmdLine, final OkHttpClient client, final String url) {
+    final LoadGenerator loadGenerator = new LoadGenerator(client, url,
+        (int) numericOption(cmdLine, CONCURRENCY_OPTION, DEFAULT_CONCURRENCY),
+        Duration.ofSeconds((long) numericOption(cmdLine, DURATION_OPTION, DEFAULT_DURATION_SECONDS)),
+        numericOption(cmdLine, RATE_OPTION, 0));
+    try {
+      loadGenerator.run().report();
+    } catch (final InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      log.warn("Load generation interrupted");
+    }
+  }
 }
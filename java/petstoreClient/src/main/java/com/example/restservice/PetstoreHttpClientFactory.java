@@ -0,0 +1,265 @@
+/*
+	Copyright NetFoundry Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	https://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+
+package com.example.restservice;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.net.SocketFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.example.demoutils.StartupTimer;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.Dns;
+import okhttp3.EventListener;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Owns the single, long-lived OkHttpClient used for every petstore request. Dialing petstore.ziti over the overlay is the
+ * expensive part of a short request, so all callers share one connection pool and dispatcher rather than building a
+ * client per call. Clients derived with {@code client().newBuilder()} keep sharing both.
+ */
+final class PetstoreHttpClientFactory implements AutoCloseable {
+  private static final Logger log = LoggerFactory.getLogger(PetstoreHttpClientFactory.class);
+
+  /**
+   * Pool, dispatcher and tail latency tuning for the shared client.
+   * @param maxIdleConnections connections kept open in the pool between requests
+   * @param keepAlive how long an idle pooled connection is kept before it is closed
+   * @param maxRequests limit on concurrently executing asynchronous calls
+   * @param maxRequestsPerHost limit on concurrently executing asynchronous calls to one host. Hedged attempts count
+   * @param http2 speak HTTP/2 with prior knowledge (h2c) instead of HTTP/1.1. The server must support cleartext HTTP/2
+   * @param hedgePercentile hedge a GET not answered after this latency percentile, see {@link HedgingInterceptor}. 0 disables
+   * @param hedgeMinDelay the least time to wait before hedging
+   * @param breakerThreshold open the {@link CircuitBreaker} after this many failed requests in a row. 0 disables
+   * @param breakerCoolDown how long the circuit breaker stays open
+   */
+  record Settings(int maxIdleConnections, Duration keepAlive, int maxRequests, int maxRequestsPerHost, boolean http2,
+      double hedgePercentile, Duration hedgeMinDelay, int breakerThreshold, Duration breakerCoolDown) {
+    static final int DEFAULT_MAX_IDLE_CONNECTIONS = 32;
+    static final int DEFAULT_KEEP_ALIVE_SECONDS = 300;
+    static final int DEFAULT_MAX_REQUESTS = 256;
+    static final int DEFAULT_MAX_REQUESTS_PER_HOST = 64;
+    static final int DEFAULT_HEDGE_MIN_DELAY_MILLIS = 100;
+    static final int DEFAULT_BREAKER_COOL_DOWN_SECONDS = 10;
+
+    static Settings defaults() {
+      return new Settings(DEFAULT_MAX_IDLE_CONNECTIONS, Duration.ofSeconds(DEFAULT_KEEP_ALIVE_SECONDS), DEFAULT_MAX_REQUESTS,
+          DEFAULT_MAX_REQUESTS_PER_HOST, false, 0, Duration.ofMillis(DEFAULT_HEDGE_MIN_DELAY_MILLIS), 0,
+          Duration.ofSeconds(DEFAULT_BREAKER_COOL_DOWN_SECONDS));
+    }
+  }
+
+  private final Settings settings;
+  private final OkHttpClient client;
+  // the client without the breaker and hedging interceptors, sharing the pool, dispatcher and listeners
+  private final OkHttpClient attemptClient;
+  private final Dns dns;
+  private final PoolUsage poolUsage = new PoolUsage();
+  private final PhaseTracer phaseTracer;
+  private final HedgingInterceptor hedging;
+  private final CircuitBreaker circuitBreaker;
+  private final AtomicBoolean firstByteTimed = new AtomicBoolean();
+
+  PetstoreHttpClientFactory(final Settings settings, final SocketFactory socketFactory, final Dns dns) {
+    this(settings, socketFactory, dns, null);
+  }
+
+  /**
+   * @param phaseLog where to write the phases of each request as JSON lines, or null for none
+   */
+  PetstoreHttpClientFactory(final Settings settings, final SocketFactory socketFactory, final Dns dns, final Path phaseLog) {
+    this.settings = settings;
+    this.dns = dns;
+    this.phaseTracer = new PhaseTracer(phaseLog);
+    final Dispatcher dispatcher = new Dispatcher();
+    dispatcher.setMaxRequests(settings.maxRequests());
+    dispatcher.setMaxRequestsPerHost(settings.maxRequestsPerHost());
+    final OkHttpClient.Builder builder = new OkHttpClient.Builder()
+        .followRedirects(true)
+        .socketFactory(socketFactory)
+        .dns(dns)
+        .connectionPool(new ConnectionPool(settings.maxIdleConnections(), settings.keepAlive().toMillis(), TimeUnit.MILLISECONDS))
+        .dispatcher(dispatcher)
+        .eventListenerFactory(CompositeEventListener.factory(poolUsage, phaseTracer));
+    if (settings.http2()) {
+      builder.protocols(List.of(Protocol.H2_PRIOR_KNOWLEDGE));
+    }
+    this.attemptClient = builder.build();
+    // outermost, so the first byte is timed as the caller sees it
+    final OkHttpClient.Builder clientBuilder = attemptClient.newBuilder().addInterceptor(this::timeFirstByte);
+    // the breaker goes before hedging, so it sees the outcome of a request rather than of each hedged attempt
+    this.circuitBreaker = settings.breakerThreshold() > 0 ? new CircuitBreaker(settings.breakerThreshold(), settings.breakerCoolDown()) : null;
+    if (circuitBreaker != null) {
+      clientBuilder.addInterceptor(circuitBreaker);
+    }
+    this.hedging = settings.hedgePercentile() > 0
+        ? new HedgingInterceptor(attemptClient, settings.hedgePercentile(), settings.hedgeMinDelay()) : null;
+    if (hedging != null) {
+      // the attempts are what dial and read, so only they are traced
+      clientBuilder.addInterceptor(hedging).eventListener(EventListener.NONE);
+    }
+    this.client = clientBuilder.build();
+  }
+
+  /**
+   * Times the startup's first byte on the first response to any request, whether it is a single request, a load run or
+   * a fan-out. Once it is timed, requests go straight on.
+   */
+  private Response timeFirstByte(final Interceptor.Chain chain) throws IOException {
+    if (firstByteTimed.get()) {
+      return chain.proceed(chain.request());
+    }
+    StartupTimer.begin(StartupTimer.Phase.FIRST_BYTE);
+    try {
+      final Response response = chain.proceed(chain.request());
+      StartupTimer.end(StartupTimer.Phase.FIRST_BYTE);
+      firstByteTimed.set(true);
+      return response;
+    } finally {
+      // a failed request has no first byte, leave the phase to the next request
+      StartupTimer.cancel(StartupTimer.Phase.FIRST_BYTE);
+    }
+  }
+
+  OkHttpClient client() {
+    return client;
+  }
+
+  /**
+   * Opens connections to the host of {@code url} before the first request needs one and leaves them idle in the pool, so
+   * the first requests skip the dial over the overlay. It sends {@code connections} HEAD requests at once, each of which
+   * has to open its own connection. Over HTTP/2 one connection carries them all. The warm-up requests are not counted in
+   * the pool, phase, hedging or circuit breaker statistics.
+   * @param connections how many connections to open, capped to the number the pool keeps idle
+   * @param timeout how long to wait for the connections to open
+   * @return how many idle connections the pool holds afterwards
+   */
+  int prewarm(final String url, final int connections, final Duration timeout) throws InterruptedException {
+    final int wanted = Math.min(connections, Math.min(settings.maxIdleConnections(), settings.maxRequestsPerHost()));
+    if (wanted < connections) {
+      log.warn("Pre-warming {} connections instead of {}, the pool keeps at most {} idle and sends at most {} requests to one host at once",
+          wanted, connections, settings.maxIdleConnections(), settings.maxRequestsPerHost());
+    }
+    // without the interceptors as well, so warm-ups are neither hedged nor counted by the circuit breaker
+    final OkHttpClient warmUpClient = attemptClient.newBuilder().eventListener(EventListener.NONE).build();
+    final Request warmUpRequest = new Request.Builder().url(url).head().build();
+    final CountDownLatch done = new CountDownLatch(wanted);
+    final AtomicInteger failed = new AtomicInteger();
+    for (int i = 0; i < wanted; i++) {
+      warmUpClient.newCall(warmUpRequest).enqueue(new Callback() {
+        @Override
+        public void onResponse(final Call call, final Response response) {
+          // the status does not matter, only that the connection was opened and handed back to the pool
+          response.close();
+          done.countDown();
+        }
+
+        @Override
+        public void onFailure(final Call call, final IOException exception) {
+          if (failed.getAndIncrement() == 0) {
+            log.warn("Pre-warming a connection to {} failed: {}", call.request().url(), exception.getMessage());
+          }
+          done.countDown();
+        }
+      });
+    }
+    if (!done.await(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+      log.warn("Pre-warming did not finish within {} ms", timeout.toMillis());
+    }
+    return client.connectionPool().idleConnectionCount();
+  }
+
+  void logStats() {
+    final long reused = poolUsage.reused.get();
+    final long opened = poolUsage.opened.get();
+    final long total = reused + opened;
+    final double hitRate = total == 0 ? 0 : 100.0 * reused / total;
+    log.info("Connection pool: {} of {} requests reused a pooled connection ({}% hit rate), {} opened a new connection, {} connect failures. "
+            + "Pool now holds {} connections ({} idle)", reused, total, String.format("%.1f", hitRate), opened,
+        poolUsage.connectFailures.get(), client.connectionPool().connectionCount(), client.connectionPool().idleConnectionCount());
+    if (dns instanceof CachingDns cachingDns) {
+      cachingDns.logStats();
+    }
+    if (hedging != null) {
+      hedging.logStats();
+    }
+    if (circuitBreaker != null) {
+      circuitBreaker.logStats();
+    }
+    phaseTracer.report();
+  }
+
+  @Override
+  public void close() {
+    client.dispatcher().executorService().shutdown();
+    client.connectionPool().evictAll();
+    phaseTracer.close();
+  }
+
+  /**
+   * Counts, per connection acquisition, whether the call was served from the pool or had to dial a new connection.
+   */
+  private static final class PoolUsage implements EventListener.Factory {
+    private final AtomicLong reused = new AtomicLong();
+    private final AtomicLong opened = new AtomicLong();
+    private final AtomicLong connectFailures = new AtomicLong();
+
+    @Override
+    public EventListener create(final Call call) {
+      return new EventListener() {
+        private boolean connecting;
+
+        @Override
+        public void connectStart(final Call call, final InetSocketAddress address, final Proxy proxy) {
+          connecting = true;
+        }
+
+        @Override
+        public void connectFailed(final Call call, final InetSocketAddress address, final Proxy proxy,
+            final Protocol protocol, final IOException exception) {
+          // a cancelled dial, e.g. of a hedged attempt that lost, is not a failure of the overlay
+          if (!call.isCanceled()) {
+            connectFailures.incrementAndGet();
+          }
+        }
+
+        @Override
+        public void connectionAcquired(final Call call, final Connection connection) {
+          (connecting ? opened : reused).incrementAndGet();
+          connecting = false;
+        }
+      };
+    }
+  }
+}
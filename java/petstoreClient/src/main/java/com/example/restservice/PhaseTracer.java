@@ -0,0 +1,275 @@
+/*
+	Copyright NetFoundry Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	https://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+
+package com.example.restservice;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+
+/**
+ * Times the phases of every request, so a slow call can be attributed to resolving the name through Ziti DNS, dialing
+ * the service over the overlay, the TLS handshake, waiting for the first byte or reading the body. Each phase goes into
+ * its own histogram, and {@link #report} logs them as a table. Optionally each request is also written to a file as one
+ * JSON line, for analysis after the run.
+ * <p>
+ * A request on a pooled connection has no DNS, dial or TLS phase, and those phases are only counted for requests that
+ * opened a connection.
+ */
+final class PhaseTracer implements EventListener.Factory, AutoCloseable {
+  private static final Logger log = LoggerFactory.getLogger(PhaseTracer.class);
+  private static final JsonMapper jsonMapper = new JsonMapper();
+
+  enum Phase {
+    /** resolving the host name */
+    DNS("dns"),
+    /** opening the connection through the socket factory, i.e. the overlay dial, excluding TLS */
+    DIAL("dial"),
+    /** the TLS handshake, for https only */
+    TLS("tls"),
+    /** from starting to send the request to the first byte of the response headers */
+    FIRST_BYTE("firstByte"),
+    /** reading the response body */
+    BODY("body"),
+    /** the whole call, including time queued for a connection */
+    TOTAL("total");
+
+    private final String label;
+
+    Phase(final String label) {
+      this.label = label;
+    }
+  }
+
+  private final Map<Phase, Histogram> histogramsMicros = new EnumMap<>(Phase.class);
+  private final BufferedWriter phaseLog;
+
+  /**
+   * @param phaseLogFile where to write a JSON line per request, or null for none
+   */
+  PhaseTracer(final Path phaseLogFile) {
+    for (final Phase phase : Phase.values()) {
+      histogramsMicros.put(phase, new Histogram(3));
+    }
+    BufferedWriter writer = null;
+    if (phaseLogFile != null) {
+      try {
+        writer = Files.newBufferedWriter(phaseLogFile);
+        log.info("Writing the phases of each request to {}", phaseLogFile.toAbsolutePath());
+      } catch (final IOException exception) {
+        log.error("Could not open the phase log {}: {}", phaseLogFile, exception.getMessage());
+      }
+    }
+    this.phaseLog = writer;
+  }
+
+  @Override
+  public EventListener create(final Call call) {
+    return new CallTrace();
+  }
+
+  /**
+   * Collects the phases of one call. OkHttp reports the events of a call one after the other, so no locking is needed
+   * until the call ends.
+   */
+  private final class CallTrace extends EventListener {
+    private final long[] startNanos = new long[Phase.values().length];
+    private final long[] elapsedNanos = new long[Phase.values().length];
+    private final boolean[] seen = new boolean[Phase.values().length];
+    private boolean newConnection;
+
+    private void start(final Phase phase) {
+      startNanos[phase.ordinal()] = System.nanoTime();
+    }
+
+    private void end(final Phase phase) {
+      final int index = phase.ordinal();
+      if (startNanos[index] != 0) {
+        // a call may try several addresses, so the attempts add up
+        elapsedNanos[index] += System.nanoTime() - startNanos[index];
+        startNanos[index] = 0;
+        seen[index] = true;
+      }
+    }
+
+    @Override
+    public void callStart(final Call call) {
+      start(Phase.TOTAL);
+    }
+
+    @Override
+    public void dnsStart(final Call call, final String domainName) {
+      start(Phase.DNS);
+    }
+
+    @Override
+    public void dnsEnd(final Call call, final String domainName, final List<InetAddress> inetAddressList) {
+      end(Phase.DNS);
+    }
+
+    @Override
+    public void connectStart(final Call call, final InetSocketAddress inetSocketAddress, final Proxy proxy) {
+      newConnection = true;
+      start(Phase.DIAL);
+    }
+
+    @Override
+    public void secureConnectStart(final Call call) {
+      end(Phase.DIAL);
+      start(Phase.TLS);
+    }
+
+    @Override
+    public void secureConnectEnd(final Call call, final Handshake handshake) {
+      end(Phase.TLS);
+    }
+
+    @Override
+    public void connectEnd(final Call call, final InetSocketAddress inetSocketAddress, final Proxy proxy, final Protocol protocol) {
+      end(Phase.DIAL);
+    }
+
+    @Override
+    public void connectFailed(final Call call, final InetSocketAddress inetSocketAddress, final Proxy proxy, final Protocol protocol,
+        final IOException ioe) {
+      end(Phase.DIAL);
+      end(Phase.TLS);
+    }
+
+    @Override
+    public void requestHeadersStart(final Call call) {
+      start(Phase.FIRST_BYTE);
+    }
+
+    @Override
+    public void responseHeadersStart(final Call call) {
+      end(Phase.FIRST_BYTE);
+    }
+
+    @Override
+    public void responseBodyStart(final Call call) {
+      start(Phase.BODY);
+    }
+
+    @Override
+    public void responseBodyEnd(final Call call, final long byteCount) {
+      end(Phase.BODY);
+    }
+
+    @Override
+    public void responseFailed(final Call call, final IOException ioe) {
+      end(Phase.FIRST_BYTE);
+      end(Phase.BODY);
+    }
+
+    @Override
+    public void callEnd(final Call call) {
+      finish(call, null);
+    }
+
+    @Override
+    public void callFailed(final Call call, final IOException ioe) {
+      finish(call, ioe);
+    }
+
+    private void finish(final Call call, final IOException failure) {
+      end(Phase.TOTAL);
+      synchronized (histogramsMicros) {
+        for (final Phase phase : Phase.values()) {
+          if (seen[phase.ordinal()]) {
+            histogramsMicros.get(phase).recordValue(TimeUnit.NANOSECONDS.toMicros(elapsedNanos[phase.ordinal()]));
+          }
+        }
+      }
+      if (phaseLog != null) {
+        final ObjectNode line = jsonMapper.createObjectNode()
+            .put("url", call.request().url().toString())
+            .put("outcome", failure == null ? "success" : "failure")
+            .put("connection", newConnection ? "new" : "pooled");
+        for (final Phase phase : Phase.values()) {
+          if (seen[phase.ordinal()]) {
+            line.put(phase.label + "Ms", elapsedNanos[phase.ordinal()] / (double) TimeUnit.MILLISECONDS.toNanos(1));
+          }
+        }
+        if (failure != null) {
+          line.put("error", String.valueOf(failure.getMessage()));
+        }
+        writeLine(line);
+      }
+    }
+  }
+
+  private void writeLine(final ObjectNode line) {
+    synchronized (phaseLog) {
+      try {
+        phaseLog.write(jsonMapper.writeValueAsString(line));
+        phaseLog.newLine();
+      } catch (final IOException exception) {
+        log.warn("Could not write to the phase log: {}", exception.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Logs the count, mean, percentiles and maximum of each phase seen so far, in milliseconds.
+   */
+  void report() {
+    synchronized (histogramsMicros) {
+      if (histogramsMicros.get(Phase.TOTAL).getTotalCount() == 0) {
+        return;
+      }
+      log.info("Request phases (ms):");
+      log.info(String.format("%-10s %8s %9s %9s %9s %9s %9s", "phase", "requests", "mean", "p50", "p90", "p99", "max"));
+      histogramsMicros.forEach((phase, histogram) -> {
+        if (histogram.getTotalCount() > 0) {
+          log.info(String.format("%-10s %8d %9.2f %9.2f %9.2f %9.2f %9.2f", phase.label, histogram.getTotalCount(),
+              histogram.getMean() / 1000.0, histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(90) / 1000.0,
+              histogram.getValueAtPercentile(99) / 1000.0, histogram.getMaxValue() / 1000.0));
+        }
+      });
+    }
+  }
+
+  @Override
+  public void close() {
+    if (phaseLog != null) {
+      synchronized (phaseLog) {
+        try {
+          phaseLog.close();
+        } catch (final IOException exception) {
+          log.warn("Could not close the phase log: {}", exception.getMessage());
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,155 @@
+/*
+	Copyright NetFoundry Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	https://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+
+package com.example.restservice;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A loopback stand-in for the dark Petstore service, so the client and its load mode can be exercised and benchmarked
+ * without an OpenZiti network. It answers the handful of petstore v3 paths the demo uses with synthetic pets.
+ * <p>
+ * Starting it sets the JVM-wide {@code sun.net.httpserver.nodelay} system property to true unless it is already set,
+ * which affects every JDK HTTP server in the process. The JDK reads it once, when the first server is created.
+ */
+final class StandInPetstoreServer implements AutoCloseable {
+  private static final Logger log = LoggerFactory.getLogger(StandInPetstoreServer.class);
+  private static final String NODELAY_PROPERTY = "sun.net.httpserver.nodelay";
+  private static final String FIND_BY_STATUS_PATH = "/api/v3/pet/findByStatus";
+  private static final String PET_PATH = "/api/v3/pet/";
+  private static final String STATUS_PARAMETER = "status=";
+  private static final String DEFAULT_STATUS = "available";
+
+  private final HttpServer server;
+  // one body per status the petstore knows, built up front so serving them costs no more than the network
+  private final Map<String, byte[]> findByStatusBodies;
+
+  private StandInPetstoreServer(final HttpServer server, final int petCount) {
+    this.server = server;
+    this.findByStatusBodies = Stream.of(DEFAULT_STATUS, "pending", "sold")
+        .collect(Collectors.toUnmodifiableMap(Function.identity(), status -> petsJson(petCount, status).getBytes(StandardCharsets.UTF_8)));
+  }
+
+  /**
+   * Starts the stand-in server on an ephemeral loopback port, turning on TCP_NODELAY for the JDK HTTP server as described
+   * above.
+   * @param petCount the number of pets returned by a findByStatus query, all with the requested status
+   * @return the running server
+   * @throws IOException if the server socket could not be bound
+   */
+  static StandInPetstoreServer start(final int petCount) throws IOException {
+    // the JDK server writes headers and body separately; without TCP_NODELAY Nagle adds ~40ms to every keep-alive response
+    if (System.getProperty(NODELAY_PROPERTY) == null) {
+      System.setProperty(NODELAY_PROPERTY, "true");
+    }
+    final HttpServer httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    final StandInPetstoreServer standIn = new StandInPetstoreServer(httpServer, petCount);
+    httpServer.createContext("/", standIn::handle);
+    httpServer.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    httpServer.start();
+    log.info("Stand-in petstore listening on {}", standIn.baseUrl());
+    return standIn;
+  }
+
+  String baseUrl() {
+    final InetSocketAddress address = server.getAddress();
+    return String.format("http://%s:%d", address.getHostString(), address.getPort());
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+  }
+
+  private void handle(final HttpExchange exchange) throws IOException {
+    try (exchange) {
+      final String path = exchange.getRequestURI().getPath();
+      if (path.equals(FIND_BY_STATUS_PATH)) {
+        final String status = status(exchange.getRequestURI().getRawQuery());
+        final byte[] body = findByStatusBodies.get(status);
+        if (body != null) {
+          respond(exchange, 200, body);
+        } else {
+          respond(exchange, 400, "{\"code\":400,\"message\":\"Invalid status, expected available, pending or sold\"}"
+              .getBytes(StandardCharsets.UTF_8));
+        }
+      } else if (path.startsWith(PET_PATH) && path.substring(PET_PATH.length()).matches("\\d+")) {
+        final long id = Long.parseLong(path.substring(PET_PATH.length()));
+        respond(exchange, 200, petJson(id, DEFAULT_STATUS).getBytes(StandardCharsets.UTF_8));
+      } else {
+        respond(exchange, 404, "{\"code\":404,\"message\":\"not found\"}".getBytes(StandardCharsets.UTF_8));
+      }
+    }
+  }
+
+  /**
+   * @return the status query parameter, or available like the petstore if there is none
+   */
+  private static String status(final String rawQuery) {
+    if (rawQuery != null) {
+      for (final String parameter : rawQuery.split("&")) {
+        if (parameter.startsWith(STATUS_PARAMETER)) {
+          return URLDecoder.decode(parameter.substring(STATUS_PARAMETER.length()), StandardCharsets.UTF_8);
+        }
+      }
+    }
+    return DEFAULT_STATUS;
+  }
+
+  private static void respond(final HttpExchange exchange, final int status, final byte[] body) throws IOException {
+    exchange.getRequestBody().readAllBytes();
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    if (exchange.getRequestMethod().equals("HEAD")) {
+      // e.g. the requests that pre-warm the client's connection pool
+      exchange.sendResponseHeaders(status, -1);
+      return;
+    }
+    exchange.sendResponseHeaders(status, body.length);
+    try (final OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  static String petsJson(final int petCount, final String status) {
+    final StringBuilder json = new StringBuilder("[");
+    for (int id = 1; id <= petCount; id++) {
+      if (id > 1) {
+        json.append(',');
+      }
+      json.append(petJson(id, status));
+    }
+    return json.append(']').toString();
+  }
+
+  private static String petJson(final long id, final String status) {
+    return String.format("{\"id\":%d,\"category\":{\"id\":1,\"name\":\"Dogs\"},\"name\":\"Dog %d\",\"photoUrls\":[\"url1\",\"url2\"],"
+        + "\"tags\":[{\"id\":1,\"name\":\"tag1\"}],\"status\":\"%s\"}", id, id, status);
+  }
+}
@@ -0,0 +1,219 @@
+/*
+	Copyright NetFoundry Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	https://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+
+package com.example.restservice;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.net.SocketFactory;
+import org.openziti.Ziti;
+import org.openziti.ZitiContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.example.demoutils.AperitivoClient;
+import com.example.demoutils.DelegatingSocket;
+
+/**
+ * Spreads outgoing connections across several OpenZiti contexts, one per identity, instead of sending everything
+ * through the first context and its edge router connections. Each new connection is dialed through the context chosen
+ * by the {@link Selection}, and per-context counters show whether one context was the throughput ceiling: if the
+ * contexts share the load evenly and throughput grows with the context count, it was.
+ */
+final class ZitiContextPool implements AutoCloseable {
+  private static final Logger log = LoggerFactory.getLogger(ZitiContextPool.class);
+
+  enum Selection {
+    /** each connection goes to the next context in turn */
+    ROUND_ROBIN,
+    /**
+     * each connection goes to the context with the fewest open connections. Pooled connections carry many requests
+     * each, so this evens out connections rather than requests
+     */
+    LEAST_CONNECTIONS
+  }
+
+  private static final class Member {
+    private final ZitiContext context;
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final LongAdder connections = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    private Member(final ZitiContext context) {
+      this.context = context;
+    }
+  }
+
+  private final List<Member> members;
+  private final Selection selection;
+  private final AtomicInteger next = new AtomicInteger();
+
+  private ZitiContextPool(final List<ZitiContext> contexts, final Selection selection) {
+    if (contexts.isEmpty()) {
+      throw new IllegalArgumentException("A context pool needs at least one context");
+    }
+    this.members = contexts.stream().map(Member::new).toList();
+    this.selection = selection;
+  }
+
+  /**
+   * Loads one context per identity file.
+   */
+  static ZitiContextPool load(final List<Path> identityFiles, final Selection selection) {
+    final List<ZitiContext> contexts = new ArrayList<>(identityFiles.size());
+    for (final Path identityFile : identityFiles) {
+      log.info("Loading a ziti context from {}", identityFile);
+      contexts.add(Ziti.newContext(identityFile.toFile(), "".toCharArray()));
+    }
+    log.info("Spreading connections over {} contexts, {}", contexts.size(), selection);
+    return new ZitiContextPool(contexts, selection);
+  }
+
+  /**
+   * Provisions the missing identities of {@code taste_of_ziti-1.pkcs12} to {@code taste_of_ziti-<count>.pkcs12} from
+   * aperitivo in parallel, reusing those that exist, and loads a context for each.
+   */
+  static ZitiContextPool provision(final AperitivoClient aperitivo, final int count, final Selection selection) {
+    final List<CompletableFuture<Path>> identityFiles = new ArrayList<>(count);
+    for (int i = 1; i <= count; i++) {
+      final Path identityFile = Path.of(String.format("taste_of_ziti-%d.pkcs12", i));
+      identityFiles.add(Files.exists(identityFile) ? CompletableFuture.completedFuture(identityFile)
+          : aperitivo.provision(identityFile, AperitivoClient.pkcs12Keystore()));
+    }
+    return load(identityFiles.stream().map(CompletableFuture::join).toList(), selection);
+  }
+
+  /**
+   * Waits for every context to be able to see the service.
+   * @throws IllegalArgumentException if a context does not find it within the timeout
+   */
+  void awaitService(final String service, final long timeoutMillis) {
+    members.parallelStream().forEach(member -> member.context.getService(service, timeoutMillis));
+  }
+
+  /**
+   * @return a factory whose sockets are each dialed through a context chosen when they connect
+   */
+  SocketFactory socketFactory() {
+    return new SocketFactory() {
+      @Override
+      public Socket createSocket() {
+        return new PooledSocket();
+      }
+
+      @Override
+      public Socket createSocket(final String host, final int port) throws IOException {
+        return connected(new InetSocketAddress(host, port));
+      }
+
+      @Override
+      public Socket createSocket(final String host, final int port, final InetAddress localHost, final int localPort) throws IOException {
+        return connected(new InetSocketAddress(host, port));
+      }
+
+      @Override
+      public Socket createSocket(final InetAddress host, final int port) throws IOException {
+        return connected(new InetSocketAddress(host, port));
+      }
+
+      @Override
+      public Socket createSocket(final InetAddress address, final int port, final InetAddress localAddress, final int localPort)
+          throws IOException {
+        return connected(new InetSocketAddress(address, port));
+      }
+
+      private Socket connected(final InetSocketAddress endpoint) throws IOException {
+        final Socket socket = new PooledSocket();
+        socket.connect(endpoint);
+        return socket;
+      }
+    };
+  }
+
+  private Member select() {
+    if (selection == Selection.LEAST_CONNECTIONS) {
+      return members.stream().min(Comparator.comparingInt(member -> member.openConnections.get())).orElseThrow();
+    }
+    return members.get(Math.floorMod(next.getAndIncrement(), members.size()));
+  }
+
+  /**
+   * A socket dialed through one of the pool's contexts, counted as open on it until closed.
+   */
+  private final class PooledSocket extends DelegatingSocket {
+    private final AtomicBoolean released = new AtomicBoolean();
+    private Member member;
+
+    @Override
+    protected Socket dial(final InetSocketAddress endpoint, final int timeoutMillis) throws IOException {
+      member = select();
+      member.openConnections.incrementAndGet();
+      member.connections.increment();
+      try {
+        // dial by intercept name, the address only exists in the Ziti DNS resolver
+        return member.context.connect(endpoint.getHostString(), endpoint.getPort());
+      } catch (final Exception exception) {
+        // the SDK is written in Kotlin, so an IOException may arrive here without being declared
+        release(true);
+        throw exception instanceof IOException ioException ? ioException
+            : new IOException(String.format("Dialing %s through %s failed", endpoint, member.context.name()), exception);
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        super.close();
+      } finally {
+        release(false);
+      }
+    }
+
+    private void release(final boolean failed) {
+      if (member != null && released.compareAndSet(false, true)) {
+        member.openConnections.decrementAndGet();
+        if (failed) {
+          member.errors.increment();
+        }
+      }
+    }
+  }
+
+  void logStats() {
+    for (final Member member : members) {
+      log.info("Context {}: {} connections, {} failed, {} open", member.context.name(), member.connections.sum(),
+          member.errors.sum(), member.openConnections.get());
+    }
+  }
+
+  @Override
+  public void close() {
+    for (final Member member : members) {
+      member.context.destroy();
+      Ziti.removeContext(member.context);
+    }
+  }
+}
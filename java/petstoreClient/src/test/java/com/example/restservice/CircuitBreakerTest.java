@@ -0,0 +1,265 @@
+/*
+	Copyright NetFoundry Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	https://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+
+package com.example.restservice;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.Interceptor;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Drives {@link CircuitBreaker} through a fake interceptor chain whose upstream answers, fails or blocks as each test
+ * scripts it, so the state changes can be checked without a network.
+ */
+class CircuitBreakerTest {
+  private static final Request REQUEST = new Request.Builder().url("http://petstore.ziti/api/v3/pet/1").build();
+  private static final Duration COOL_DOWN = Duration.ofMillis(50);
+
+  @FunctionalInterface
+  private interface Upstream {
+    Response respond() throws IOException, InterruptedException;
+  }
+
+  private final AtomicInteger sent = new AtomicInteger();
+  private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+  @AfterEach
+  void stopExecutor() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  void opensAfterTheThresholdAndFailsFast() throws IOException {
+    final CircuitBreaker breaker = new CircuitBreaker(2, Duration.ofMinutes(1));
+    send(breaker, status(500));
+    assertThrows(IOException.class, () -> send(breaker, failure()));
+    assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    assertThrows(CircuitBreaker.OpenException.class, () -> send(breaker, status(200)));
+    assertEquals(2, sent.get());
+  }
+
+  @Test
+  void aSuccessResetsTheFailuresInARow() throws IOException {
+    final CircuitBreaker breaker = new CircuitBreaker(2, Duration.ofMinutes(1));
+    send(breaker, status(503));
+    send(breaker, status(200));
+    send(breaker, status(503));
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    // client errors are the caller's fault, not the circuit's
+    send(breaker, status(404));
+    send(breaker, status(404));
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+  }
+
+  @Test
+  void aSuccessfulTrialClosesTheCircuit() throws Exception {
+    final CircuitBreaker breaker = new CircuitBreaker(1, COOL_DOWN);
+    send(breaker, status(500));
+    awaitCoolDown();
+    final CountDownLatch release = new CountDownLatch(1);
+    final Future<Response> trial = sendInBackground(breaker, blocked(release, status(200)));
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+    // only the trial is let through while it is in flight
+    assertThrows(CircuitBreaker.OpenException.class, () -> send(breaker, status(200)));
+    release.countDown();
+    assertEquals(200, trial.get(5, TimeUnit.SECONDS).code());
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+  }
+
+  @Test
+  void aFailedTrialOpensTheCircuitAgain() throws Exception {
+    final CircuitBreaker breaker = new CircuitBreaker(1, COOL_DOWN);
+    send(breaker, status(500));
+    awaitCoolDown();
+    send(breaker, status(502));
+    assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    assertThrows(CircuitBreaker.OpenException.class, () -> send(breaker, status(200)));
+  }
+
+  @Test
+  void aTrialThatThrowsAnUncheckedExceptionOpensTheCircuitAgain() throws Exception {
+    final CircuitBreaker breaker = new CircuitBreaker(1, COOL_DOWN);
+    send(breaker, status(500));
+    awaitCoolDown();
+    assertThrows(IllegalStateException.class, () -> send(breaker, () -> {
+      throw new IllegalStateException("Interceptor bug");
+    }));
+    assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    awaitCoolDown();
+    send(breaker, status(200));
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+  }
+
+  @Test
+  void aLateFailureDoesNotDecideTheTrial() throws Exception {
+    final CircuitBreaker breaker = new CircuitBreaker(1, COOL_DOWN);
+    final CountDownLatch releaseEarly = new CountDownLatch(1);
+    final Future<Response> early = sendInBackground(breaker, blocked(releaseEarly, failure()));
+    send(breaker, status(500));
+    awaitCoolDown();
+    final CountDownLatch releaseTrial = new CountDownLatch(1);
+    final Future<Response> trial = sendInBackground(breaker, blocked(releaseTrial, status(200)));
+
+    releaseEarly.countDown();
+    assertThrows(ExecutionException.class, () -> early.get(5, TimeUnit.SECONDS));
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+
+    releaseTrial.countDown();
+    trial.get(5, TimeUnit.SECONDS);
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+  }
+
+  @Test
+  void aLateSuccessDoesNotDecideTheTrial() throws Exception {
+    final CircuitBreaker breaker = new CircuitBreaker(1, COOL_DOWN);
+    final CountDownLatch releaseEarly = new CountDownLatch(1);
+    final Future<Response> early = sendInBackground(breaker, blocked(releaseEarly, status(200)));
+    send(breaker, status(500));
+    awaitCoolDown();
+    final CountDownLatch releaseTrial = new CountDownLatch(1);
+    final Future<Response> trial = sendInBackground(breaker, blocked(releaseTrial, failure()));
+
+    releaseEarly.countDown();
+    early.get(5, TimeUnit.SECONDS);
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+
+    releaseTrial.countDown();
+    assertThrows(ExecutionException.class, () -> trial.get(5, TimeUnit.SECONDS));
+    assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+  }
+
+  private Response send(final CircuitBreaker breaker, final Upstream upstream) throws IOException {
+    return breaker.intercept(new FakeChain(upstream));
+  }
+
+  /**
+   * Sends on another thread and returns once the request has been let through to the upstream.
+   */
+  private Future<Response> sendInBackground(final CircuitBreaker breaker, final Upstream upstream) throws InterruptedException {
+    final CountDownLatch entered = new CountDownLatch(1);
+    final Future<Response> response = executor.submit(() -> send(breaker, () -> {
+      entered.countDown();
+      return upstream.respond();
+    }));
+    if (!entered.await(5, TimeUnit.SECONDS)) {
+      throw new AssertionError("The request was not let through");
+    }
+    return response;
+  }
+
+  private static void awaitCoolDown() throws InterruptedException {
+    Thread.sleep(COOL_DOWN.plusMillis(20));
+  }
+
+  private static Upstream status(final int code) {
+    return () -> new Response.Builder().request(REQUEST).protocol(Protocol.HTTP_1_1).code(code).message("")
+        .body(ResponseBody.create("", null)).build();
+  }
+
+  private static Upstream failure() {
+    return () -> {
+      throw new IOException("Connection reset");
+    };
+  }
+
+  private static Upstream blocked(final CountDownLatch release, final Upstream then) {
+    return () -> {
+      release.await();
+      return then.respond();
+    };
+  }
+
+  private final class FakeChain implements Interceptor.Chain {
+    private final Upstream upstream;
+
+    private FakeChain(final Upstream upstream) {
+      this.upstream = upstream;
+    }
+
+    @Override
+    public Request request() {
+      return REQUEST;
+    }
+
+    @Override
+    public Response proceed(final Request request) throws IOException {
+      sent.incrementAndGet();
+      try {
+        return upstream.respond();
+      } catch (final InterruptedException exception) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted", exception);
+      }
+    }
+
+    @Override
+    public Connection connection() {
+      return null;
+    }
+
+    @Override
+    public Call call() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int connectTimeoutMillis() {
+      return 0;
+    }
+
+    @Override
+    public Interceptor.Chain withConnectTimeout(final int timeout, final TimeUnit unit) {
+      return this;
+    }
+
+    @Override
+    public int readTimeoutMillis() {
+      return 0;
+    }
+
+    @Override
+    public Interceptor.Chain withReadTimeout(final int timeout, final TimeUnit unit) {
+      return this;
+    }
+
+    @Override
+    public int writeTimeoutMillis() {
+      return 0;
+    }
+
+    @Override
+    public Interceptor.Chain withWriteTimeout(final int timeout, final TimeUnit unit) {
+      return this;
+    }
+  }
+}
@@ -0,0 +1,170 @@
+/*
+	Copyright NetFoundry Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+	https://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+
+package com.example.restservice;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * Runs {@link HedgingInterceptor} against a local server that delays each response by a scripted amount, so a stalled
+ * first attempt can be raced by its duplicate.
+ */
+class HedgingInterceptorTest {
+  private static final Duration MIN_DELAY = Duration.ofMillis(20);
+  private static final long STALL_MILLIS = 5000;
+
+  private final Deque<Long> delaysMillis = new ArrayDeque<>();
+  private final CountDownLatch cancelled = new CountDownLatch(1);
+  private volatile long defaultDelayMillis;
+  private HttpServer server;
+  private String url;
+  private OkHttpClient attemptClient;
+
+  @BeforeEach
+  void startServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/", exchange -> {
+      final long delayMillis;
+      synchronized (delaysMillis) {
+        delayMillis = delaysMillis.isEmpty() ? defaultDelayMillis : delaysMillis.poll();
+      }
+      try {
+        Thread.sleep(delayMillis);
+      } catch (final InterruptedException exception) {
+        Thread.currentThread().interrupt();
+      }
+      final byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      } catch (final IOException exception) {
+        // the client cancelled the attempt that lost
+      }
+    });
+    server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    server.start();
+    url = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/api/v3/pet/1";
+    attemptClient = new OkHttpClient.Builder()
+        .eventListener(new EventListener() {
+          @Override
+          public void callFailed(final Call call, final IOException exception) {
+            if (call.isCanceled()) {
+              cancelled.countDown();
+            }
+          }
+        })
+        .build();
+  }
+
+  @AfterEach
+  void stopServer() {
+    attemptClient.dispatcher().cancelAll();
+    attemptClient.connectionPool().evictAll();
+    server.stop(0);
+  }
+
+  @Test
+  void aStalledRequestIsHedgedAndTheLoserCancelled() throws IOException, InterruptedException {
+    delaysMillis.add(STALL_MILLIS);
+    final HedgingInterceptor hedging = new HedgingInterceptor(attemptClient, 95, MIN_DELAY);
+    final long start = System.nanoTime();
+    try (Response response = send(hedging)) {
+      assertEquals("ok", response.body().string());
+    }
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < STALL_MILLIS / 2, "the duplicate should answer first");
+    assertEquals(1, hedging.hedgedCount());
+    assertEquals(1, hedging.hedgeWinCount());
+    assertTrue(cancelled.await(5, TimeUnit.SECONDS), "the stalled attempt should be cancelled");
+  }
+
+  @Test
+  void aPromptResponseIsNotHedged() throws IOException {
+    final HedgingInterceptor hedging = new HedgingInterceptor(attemptClient, 95, Duration.ofSeconds(1));
+    try (Response response = send(hedging)) {
+      assertEquals(200, response.code());
+    }
+    assertEquals(0, hedging.hedgedCount());
+  }
+
+  @Test
+  void aPostIsNeitherHedgedNorFreedFromItsDeadline() {
+    delaysMillis.add(STALL_MILLIS);
+    final HedgingInterceptor hedging = new HedgingInterceptor(attemptClient, 95, MIN_DELAY);
+    final OkHttpClient client = attemptClient.newBuilder().addInterceptor(hedging).eventListener(EventListener.NONE)
+        .callTimeout(Duration.ofMillis(200)).build();
+    final Request post = new Request.Builder().url(url).post(RequestBody.create("{}", null)).build();
+    final long start = System.nanoTime();
+    assertThrows(InterruptedIOException.class, () -> client.newCall(post).execute().close());
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < STALL_MILLIS / 2, "the call timeout should apply");
+    assertEquals(0, hedging.hedgedCount());
+  }
+
+  @Test
+  void theDelayFollowsThePercentileOnceEnoughResponsesAreTimed() throws IOException {
+    defaultDelayMillis = 60;
+    final HedgingInterceptor hedging = new HedgingInterceptor(attemptClient, 50, MIN_DELAY);
+    assertEquals(MIN_DELAY.toNanos(), hedging.hedgeDelayNanos());
+    for (int i = 0; i < 19; i++) {
+      send(hedging).close();
+    }
+    assertEquals(MIN_DELAY.toNanos(), hedging.hedgeDelayNanos(), "too few responses to trust the percentile");
+    send(hedging).close();
+    assertTrue(hedging.hedgeDelayNanos() >= TimeUnit.MILLISECONDS.toNanos(defaultDelayMillis),
+        "the delay should follow the recorded latencies");
+  }
+
+  @Test
+  void theDelayStaysAboveAConsistentlySlowUpstream() throws IOException {
+    defaultDelayMillis = 80;
+    final HedgingInterceptor hedging = new HedgingInterceptor(attemptClient, 95, MIN_DELAY);
+    for (int round = 0; round < 3; round++) {
+      for (int i = 0; i < 20; i++) {
+        send(hedging).close();
+      }
+      assertTrue(hedging.hedgeDelayNanos() >= TimeUnit.MILLISECONDS.toNanos(defaultDelayMillis),
+          "the slow attempts that lost to their duplicate still count");
+    }
+  }
+
+  private Response send(final HedgingInterceptor hedging) throws IOException {
+    final OkHttpClient client = attemptClient.newBuilder().addInterceptor(hedging).eventListener(EventListener.NONE).build();
+    return client.newCall(new Request.Builder().url(url).build()).execute();
+  }
+}
@@ -0,0 +1,19 @@
+package io.netfoundry.zitispringboot;
+
+import java.util.List;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * A pet as returned by the petstore v3 API.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record Pet(long id, String name, Category category, List<String> photoUrls, List<Tag> tags, String status) {
+
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  public record Category(long id, String name) {
+  }
+
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  public record Tag(long id, String name) {
+  }
+}
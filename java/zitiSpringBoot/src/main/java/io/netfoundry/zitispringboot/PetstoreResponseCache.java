@@ -0,0 +1,170 @@
+package io.netfoundry.zitispringboot;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import com.example.demoutils.StartupTimer;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Caches petstore response bodies by request URI, so repeated queries for data that rarely changes do not all go over
+ * the overlay. A cached body is served as is while it is fresh. Once stale it is revalidated with
+ * {@code If-None-Match}/{@code If-Modified-Since} if the petstore sent an {@code ETag} or {@code Last-Modified}, so an
+ * unchanged result costs a 304 without a body; without validators it is fetched again. Entries are evicted when the
+ * cached bodies exceed the size limit, or some time after they were last fetched.
+ */
+@Component
+@Slf4j
+public class PetstoreResponseCache implements MeterBinder {
+
+  private record Entry(byte[] body, String etag, String lastModified, long fetchedAtNanos) {
+  }
+
+  private final CloseableHttpClient zitiHttpClient;
+  private final boolean enabled;
+  private final long freshForNanos;
+  private final Cache<URI, Entry> cache;
+  private final LongAdder notModified = new LongAdder();
+  private final LongAdder modified = new LongAdder();
+
+  public PetstoreResponseCache(CloseableHttpClient zitiHttpClient,
+      @Value("${io.openziti.taste-of-ziti.cache.enabled:true}") boolean enabled,
+      @Value("${io.openziti.taste-of-ziti.cache.max-bytes:16777216}") long maxBytes,
+      @Value("${io.openziti.taste-of-ziti.cache.fresh-for:30s}") Duration freshFor,
+      @Value("${io.openziti.taste-of-ziti.cache.expire-after:10m}") Duration expireAfter) {
+    this.zitiHttpClient = zitiHttpClient;
+    this.enabled = enabled;
+    this.freshForNanos = freshFor.toNanos();
+    this.cache = Caffeine.newBuilder()
+        .maximumWeight(maxBytes)
+        .weigher((URI uri, Entry entry) -> entry.body().length)
+        .expireAfterWrite(expireAfter)
+        .recordStats()
+        .build();
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * @return the body of the petstore's 200 response, or null if it answered with another status
+   */
+  public byte[] get(URI uri) throws IOException {
+    final Entry cached = cache.getIfPresent(uri);
+    if (cached != null && System.nanoTime() - cached.fetchedAtNanos() < freshForNanos) {
+      return cached.body();
+    }
+    final HttpGet httpGet = new HttpGet(uri);
+    if (cached != null && cached.etag() != null) {
+      httpGet.setHeader(HttpHeaders.IF_NONE_MATCH, cached.etag());
+    }
+    if (cached != null && cached.lastModified() != null) {
+      httpGet.setHeader(HttpHeaders.IF_MODIFIED_SINCE, cached.lastModified());
+    }
+    StartupTimer.begin(StartupTimer.Phase.FIRST_BYTE);
+    final Entry entry;
+    try {
+      entry = zitiHttpClient.execute(httpGet, response -> {
+        StartupTimer.end(StartupTimer.Phase.FIRST_BYTE);
+        if (response.getCode() == 304 && cached != null) {
+          notModified.increment();
+          return new Entry(cached.body(), headerOr(response, HttpHeaders.ETAG, cached.etag()),
+              headerOr(response, HttpHeaders.LAST_MODIFIED, cached.lastModified()), System.nanoTime());
+        }
+        if (response.getCode() != 200) {
+          log.error("Response code {} received", response.getCode());
+          EntityUtils.consume(response.getEntity());
+          return null;
+        }
+        if (cached != null) {
+          modified.increment();
+        }
+        return new Entry(EntityUtils.toByteArray(response.getEntity()), headerOr(response, HttpHeaders.ETAG, null),
+            headerOr(response, HttpHeaders.LAST_MODIFIED, null), System.nanoTime());
+      });
+    } finally {
+      // does nothing once the response arrived, otherwise the next request times the first byte
+      StartupTimer.cancel(StartupTimer.Phase.FIRST_BYTE);
+    }
+    if (entry == null) {
+      return null;
+    }
+    cache.put(uri, entry);
+    return entry.body();
+  }
+
+  private static String headerOr(ClassicHttpResponse response, String name, String fallback) {
+    final Header header = response.getFirstHeader(name);
+    return header != null ? header.getValue() : fallback;
+  }
+
+  /**
+   * @return Caffeine's hit, miss and eviction counts. A stale entry that had to be revalidated counts as a hit
+   */
+  public CacheStats stats() {
+    return cache.stats();
+  }
+
+  /**
+   * @return how many stale entries the petstore confirmed unchanged with a 304
+   */
+  public long notModifiedCount() {
+    return notModified.sum();
+  }
+
+  /**
+   * @return how many stale entries had changed and were fetched again
+   */
+  public long modifiedCount() {
+    return modified.sum();
+  }
+
+  public long size() {
+    return cache.estimatedSize();
+  }
+
+  /**
+   * Publishes Caffeine's statistics as {@code cache.*} meters tagged {@code cache=petstoreResponses}, and the outcome of
+   * revalidations as {@code petstore.cache.revalidations}.
+   */
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    CaffeineCacheMetrics.monitor(registry, cache, "petstoreResponses");
+    FunctionCounter.builder("petstore.cache.revalidations", notModified, LongAdder::sum)
+        .description("Stale cached responses revalidated with the petstore")
+        .tag("result", "not_modified")
+        .register(registry);
+    FunctionCounter.builder("petstore.cache.revalidations", modified, LongAdder::sum)
+        .description("Stale cached responses revalidated with the petstore")
+        .tag("result", "modified")
+        .register(registry);
+  }
+
+  @PreDestroy
+  public void logStats() {
+    if (enabled) {
+      final CacheStats stats = cache.stats();
+      log.info("Response cache: {} hits, {} misses ({}% hit rate), {} evictions, {} revalidated unchanged, {} changed, {} entries",
+          stats.hitCount(), stats.missCount(), String.format("%.1f", 100 * stats.hitRate()), stats.evictionCount(),
+          notModified.sum(), modified.sum(), cache.estimatedSize());
+    }
+  }
+}
@@ -1,38 +1,299 @@
 package io.netfoundry.zitispringboot;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import org.apache.hc.client5.http.classic.methods.HttpGet;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import com.example.demoutils.StartupTimer;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
 
 @Service
 @Slf4j
 public class PetstoreService {
 
   private final CloseableHttpClient zitiHttpClient;
+  private final ObjectProvider<OkHttpClient> zitiAsyncHttpClient;
+  private final PetstoreResponseCache responseCache;
+  private final MeterRegistry meterRegistry;
+  private final ZitiContextStartup zitiContextStartup;
+  private final Duration contextAwaitTimeout;
+  private final boolean coalescing;
+  private final SingleFlight<URI, String> bodies = new SingleFlight<>();
+  private final SingleFlight<URI, List<Pet>> petLists = new SingleFlight<>();
 
   private static String petstoreQuery = "/api/v3/pet/findByStatus?status=available";
 
-  public PetstoreService(CloseableHttpClient zitiHttpClient) {
+  public PetstoreService(CloseableHttpClient zitiHttpClient,
+      @Qualifier("zitiAsyncHttpClient") ObjectProvider<OkHttpClient> zitiAsyncHttpClient, PetstoreResponseCache responseCache,
+      MeterRegistry meterRegistry, ZitiContextStartup zitiContextStartup,
+      @Value("${io.openziti.taste-of-ziti.context.await-timeout:30s}") Duration contextAwaitTimeout,
+      @Value("${io.openziti.taste-of-ziti.coalescing.enabled:true}") boolean coalescing) {
     this.zitiHttpClient = zitiHttpClient;
+    this.zitiAsyncHttpClient = zitiAsyncHttpClient;
+    this.responseCache = responseCache;
+    this.meterRegistry = meterRegistry;
+    this.zitiContextStartup = zitiContextStartup;
+    this.contextAwaitTimeout = contextAwaitTimeout;
+    this.coalescing = coalescing;
+    registerCoalescingMetrics("log", bodies);
+    registerCoalescingMetrics("stream", petLists);
+  }
+
+  /**
+   * Publishes {@code petstore.query.upstream}, the queries that went to the petstore or the response cache, and
+   * {@code petstore.query.coalesced}, the queries that shared an identical one already in flight instead, and
+   * {@code petstore.query.in.flight}, the distinct queries being run now.
+   */
+  private void registerCoalescingMetrics(String query, SingleFlight<?, ?> singleFlight) {
+    FunctionCounter.builder("petstore.query.upstream", singleFlight, SingleFlight::executedCount)
+        .description("Petstore queries that were sent, rather than coalesced with one in flight")
+        .tag("query", query)
+        .register(meterRegistry);
+    FunctionCounter.builder("petstore.query.coalesced", singleFlight, SingleFlight::coalescedCount)
+        .description("Petstore queries that shared the result of an identical query in flight")
+        .tag("query", query)
+        .register(meterRegistry);
+    Gauge.builder("petstore.query.in.flight", singleFlight, SingleFlight::inFlightCount)
+        .description("Distinct petstore queries in flight, each shared by every caller waiting for it")
+        .tag("query", query)
+        .register(meterRegistry);
+  }
+
+  public long coalescedCount() {
+    return bodies.coalescedCount() + petLists.coalescedCount();
   }
 
   public void queryPetstore() throws URISyntaxException, IOException {
-    HttpGet httpGet = new HttpGet(new URI(String.format("https://%s:%d%s", "petstore.demo", 443, petstoreQuery)));
-    zitiHttpClient.execute(httpGet, response -> {
-      log.info("Reading response");
-      if (response.getCode() == 200) {
-        log.info("--- {}", EntityUtils.toString(response.getEntity()));
-      } else {
+    final long start = System.nanoTime();
+    boolean success = false;
+    try {
+      success = logPetstore();
+    } finally {
+      recordQuery("blocking", start, success);
+    }
+  }
+
+  private boolean logPetstore() throws URISyntaxException, IOException {
+    zitiContextStartup.awaitActive(contextAwaitTimeout);
+    final URI uri = new URI(String.format("https://%s:%d%s", "petstore.demo", 443, petstoreQuery));
+    final String body = coalescing ? bodies.execute(uri, () -> fetchBody(uri)) : fetchBody(uri);
+    if (body != null) {
+      log.info("--- {}", body);
+    }
+    return body != null;
+  }
+
+  /**
+   * @return the body of the petstore's 200 response, or null if it answered with another status
+   */
+  private String fetchBody(URI uri) throws IOException {
+    if (responseCache.isEnabled()) {
+      final byte[] body = responseCache.get(uri);
+      return body != null ? new String(body, StandardCharsets.UTF_8) : null;
+    }
+    HttpGet httpGet = new HttpGet(uri);
+    StartupTimer.begin(StartupTimer.Phase.FIRST_BYTE);
+    try {
+      return zitiHttpClient.execute(httpGet, response -> {
+        StartupTimer.end(StartupTimer.Phase.FIRST_BYTE);
+        log.info("Reading response");
+        if (response.getCode() == 200) {
+          return EntityUtils.toString(response.getEntity());
+        }
         log.error("Response code {} received", response.getCode());
+        EntityUtils.consume(response.getEntity());
+        return null;
+      });
+    } finally {
+      StartupTimer.cancel(StartupTimer.Phase.FIRST_BYTE);
+    }
+  }
+
+  /**
+   * Streams the petstore query result, handing each pet to the consumer as it is parsed from the response instead of
+   * reading the whole body into memory first. With the response cache enabled the body is cached and the pets are
+   * parsed from the cached copy.
+   * <p>
+   * Concurrent identical queries are coalesced unless {@code io.openziti.taste-of-ziti.coalescing.enabled=false}: one
+   * of them runs the query and is handed each pet as it is parsed, while it also keeps the pets in a list for the callers
+   * that share the query, who are handed them once the list is complete. So the result is still held in memory once per
+   * query, but the caller that runs it does not wait for the whole of it.
+   * <p>
+   * Like every query, it first waits up to {@code io.openziti.taste-of-ziti.context.await-timeout} for the Ziti context
+   * to be active, and fails with an {@link IOException} if it is not, or at once if its setup failed.
+   * @param petConsumer called with each pet in the order the petstore returns them
+   * @return the number of pets read, or -1 if the petstore did not answer with 200
+   */
+  public long queryPetstore(Consumer<Pet> petConsumer) throws URISyntaxException, IOException {
+    final long start = System.nanoTime();
+    long pets = -1;
+    try {
+      pets = streamPetstore(petConsumer);
+      return pets;
+    } finally {
+      recordQuery("blocking", start, pets >= 0);
+    }
+  }
+
+  private long streamPetstore(Consumer<Pet> petConsumer) throws URISyntaxException, IOException {
+    zitiContextStartup.awaitActive(contextAwaitTimeout);
+    final URI uri = new URI(String.format("https://%s:%d%s", "petstore.demo", 443, petstoreQuery));
+    if (!coalescing) {
+      return readPets(uri, petConsumer);
+    }
+    final AtomicBoolean ran = new AtomicBoolean();
+    final AtomicReference<RuntimeException> consumerFailure = new AtomicReference<>();
+    final List<Pet> pets = petLists.execute(uri, () -> {
+      ran.set(true);
+      final List<Pet> read = new ArrayList<>();
+      return readPets(uri, pet -> {
+        read.add(pet);
+        deliver(pet, petConsumer, consumerFailure);
+      }) >= 0 ? List.copyOf(read) : null;
+    });
+    if (consumerFailure.get() != null) {
+      throw consumerFailure.get();
+    }
+    if (pets == null) {
+      return -1L;
+    }
+    if (!ran.get()) {
+      pets.forEach(petConsumer);
+    }
+    return pets.size();
+  }
+
+  /**
+   * Hands a pet to the consumer of the caller that runs a coalesced query. If the consumer fails, e.g. because its
+   * client went away, the pets are still read for the callers sharing the query, and the failure is kept for the caller.
+   */
+  private static void deliver(Pet pet, Consumer<Pet> petConsumer, AtomicReference<RuntimeException> consumerFailure) {
+    if (consumerFailure.get() != null) {
+      return;
+    }
+    try {
+      petConsumer.accept(pet);
+    } catch (RuntimeException exception) {
+      consumerFailure.set(exception);
+    }
+  }
+
+  private long readPets(URI uri, Consumer<Pet> petConsumer) throws IOException {
+    if (responseCache.isEnabled()) {
+      final byte[] body = responseCache.get(uri);
+      return body != null ? PetStreamReader.readPets(new ByteArrayInputStream(body), petConsumer) : -1L;
+    }
+    HttpGet httpGet = new HttpGet(uri);
+    StartupTimer.begin(StartupTimer.Phase.FIRST_BYTE);
+    try {
+      return zitiHttpClient.execute(httpGet, response -> {
+        StartupTimer.end(StartupTimer.Phase.FIRST_BYTE);
+        if (response.getCode() != 200) {
+          log.error("Response code {} received", response.getCode());
+          EntityUtils.consume(response.getEntity());
+          return -1L;
+        }
+        return PetStreamReader.readPets(response.getEntity().getContent(), petConsumer);
+      });
+    } finally {
+      StartupTimer.cancel(StartupTimer.Phase.FIRST_BYTE);
+    }
+  }
+
+  /**
+   * The same query as {@link #queryPetstore(Consumer)}, without blocking the calling thread. It needs the async client,
+   * {@code io.openziti.taste-of-ziti.http-client=async}. Cancelling the returned future cancels the request. It always
+   * goes to the petstore, the response cache only serves the blocking client. The wait for the Ziti context does not
+   * block either.
+   * @return the number of pets read, or -1 if the petstore did not answer with 200
+   */
+  public CompletableFuture<Long> queryPetstoreAsync(Consumer<Pet> petConsumer) {
+    final OkHttpClient client = zitiAsyncHttpClient.getIfAvailable();
+    if (client == null) {
+      return CompletableFuture.failedFuture(
+          new IllegalStateException("The async http client is not enabled, set io.openziti.taste-of-ziti.http-client=async"));
+    }
+    final Request request = new Request.Builder().url(String.format("https://%s:%d%s", "petstore.demo", 443, petstoreQuery)).build();
+    final CompletableFuture<Long> result = new CompletableFuture<>();
+    final long start = System.nanoTime();
+    final Call call = client.newCall(request);
+    zitiContextStartup.whenActive(contextAwaitTimeout).whenComplete((zitiContext, failure) -> {
+      if (failure != null) {
+        result.completeExceptionally(failure);
+      } else if (!result.isDone()) {
+        StartupTimer.begin(StartupTimer.Phase.FIRST_BYTE);
+        enqueue(call, petConsumer, result);
+      }
+    });
+    result.whenComplete((pets, failure) -> {
+      if (result.isCancelled()) {
+        call.cancel();
       }
-      return response;
+      recordQuery("async", start, failure == null && pets >= 0);
     });
+    return result;
+  }
+
+  private static void enqueue(Call call, Consumer<Pet> petConsumer, CompletableFuture<Long> result) {
+    call.enqueue(new Callback() {
+      @Override
+      public void onResponse(Call call, Response response) {
+        StartupTimer.end(StartupTimer.Phase.FIRST_BYTE);
+        try (response) {
+          if (response.code() != 200) {
+            log.error("Response code {} received", response.code());
+            result.complete(-1L);
+          } else {
+            result.complete(PetStreamReader.readPets(response.body().byteStream(), petConsumer));
+          }
+        } catch (IOException | RuntimeException exception) {
+          result.completeExceptionally(exception);
+        }
+      }
+
+      @Override
+      public void onFailure(Call call, IOException exception) {
+        StartupTimer.cancel(StartupTimer.Phase.FIRST_BYTE);
+        result.completeExceptionally(exception);
+      }
+    });
+  }
 
+  /**
+   * Times a query as the caller sees it, including queries the response cache answered.
+   */
+  private void recordQuery(String client, long startNanos, boolean success) {
+    Timer.builder("petstore.query")
+        .description("Petstore queries, as seen by the caller")
+        .tag("client", client)
+        .tag("outcome", success ? "success" : "error")
+        .register(meterRegistry)
+        .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
   }
 }
@@ -0,0 +1,88 @@
+package io.netfoundry.zitispringboot;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Coalesces concurrent calls with the same key: the first caller runs the call, and callers that arrive while it is in
+ * flight wait for it and share its result, or its failure, instead of running their own. Nothing is kept once the call
+ * returns, so a caller that arrives after that starts a new call.
+ */
+final class SingleFlight<K, V> {
+
+  @FunctionalInterface
+  interface Call<V> {
+    V call() throws IOException;
+  }
+
+  private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+  private final LongAdder executed = new LongAdder();
+  private final LongAdder coalesced = new LongAdder();
+
+  /**
+   * @return the result of the call, or of the identical call already in flight. Shared results must not be modified
+   */
+  V execute(K key, Call<V> call) throws IOException {
+    final CompletableFuture<V> own = new CompletableFuture<>();
+    final CompletableFuture<V> shared = inFlight.putIfAbsent(key, own);
+    if (shared != null) {
+      coalesced.increment();
+      return await(shared);
+    }
+    executed.increment();
+    try {
+      final V value = call.call();
+      own.complete(value);
+      return value;
+    } catch (Throwable failure) {
+      own.completeExceptionally(failure);
+      throw failure;
+    } finally {
+      inFlight.remove(key, own);
+    }
+  }
+
+  private static <V> V await(CompletableFuture<V> shared) throws IOException {
+    try {
+      // no timeout here, the call in flight is bounded by the http client's own timeouts
+      return shared.get();
+    } catch (ExecutionException exception) {
+      // wrapped, so the stack trace shows this caller as well as the one that ran the call
+      if (exception.getCause() instanceof IOException ioException) {
+        throw new IOException(ioException.getMessage(), ioException);
+      }
+      if (exception.getCause() instanceof RuntimeException runtimeException) {
+        throw new IllegalStateException(runtimeException.getMessage(), runtimeException);
+      }
+      throw new IllegalStateException("The coalesced call failed", exception.getCause());
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for a coalesced call");
+    }
+  }
+
+  /**
+   * @return how many calls were run
+   */
+  long executedCount() {
+    return executed.sum();
+  }
+
+  /**
+   * @return how many callers shared a call that was already in flight instead of running their own
+   */
+  long coalescedCount() {
+    return coalesced.sum();
+  }
+
+  /**
+   * @return how many calls are in flight now
+   */
+  int inFlightCount() {
+    return inFlight.size();
+  }
+}
@@ -0,0 +1,101 @@
+package io.netfoundry.zitispringboot;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import com.sun.management.OperatingSystemMXBean;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Sends a fixed number of petstore queries at a fixed concurrency through the client chosen with
+ * {@code io.openziti.taste-of-ziti.http-client}, then logs the throughput, the CPU time the process spent per request
+ * and the peak thread count. The blocking client needs a thread per request in flight; the async client needs none.
+ * Requests per CPU second is the throughput one core would sustain, and is the number to compare between the two.
+ * <p>
+ * It runs only when {@code io.openziti.taste-of-ziti.throughput.requests} is set.
+ */
+@Component
+@ConditionalOnProperty(name = "io.openziti.taste-of-ziti.throughput.requests")
+@Slf4j
+public class ThroughputComparison implements ApplicationRunner {
+  private final PetstoreService petstoreService;
+  private final PetstoreResponseCache responseCache;
+  private final boolean async;
+  private final int requests;
+  private final int concurrency;
+
+  public ThroughputComparison(PetstoreService petstoreService, PetstoreResponseCache responseCache,
+      @Value("${io.openziti.taste-of-ziti.http-client:blocking}") String httpClient,
+      @Value("${io.openziti.taste-of-ziti.throughput.requests}") int requests,
+      @Value("${io.openziti.taste-of-ziti.throughput.concurrency:32}") int concurrency) {
+    this.petstoreService = petstoreService;
+    this.responseCache = responseCache;
+    this.async = httpClient.equals("async");
+    this.requests = requests;
+    this.concurrency = concurrency;
+  }
+
+  @Override
+  public void run(ApplicationArguments args) throws Exception {
+    final OperatingSystemMXBean os = (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+    final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    final AtomicLong failures = new AtomicLong();
+    log.info("Sending {} petstore queries, {} at a time, with the {} client", requests, concurrency, async ? "async" : "blocking");
+    if (!async && responseCache.isEnabled()) {
+      log.warn("The response cache is enabled, so most blocking queries will not reach the petstore");
+    }
+    final long coalescedBefore = petstoreService.coalescedCount();
+    threads.resetPeakThreadCount();
+    final long cpuStart = os.getProcessCpuTime();
+    final long start = System.nanoTime();
+    if (async) {
+      final Semaphore inFlight = new Semaphore(concurrency);
+      for (int i = 0; i < requests; i++) {
+        inFlight.acquire();
+        petstoreService.queryPetstoreAsync(pet -> { }).whenComplete((pets, failure) -> {
+          if (failure != null || pets < 0) {
+            failures.incrementAndGet();
+          }
+          inFlight.release();
+        });
+      }
+      inFlight.acquire(concurrency);
+    } else {
+      try (ExecutorService executor = Executors.newFixedThreadPool(concurrency)) {
+        final CompletableFuture<?>[] queries = new CompletableFuture<?>[requests];
+        for (int i = 0; i < requests; i++) {
+          queries[i] = CompletableFuture.runAsync(() -> {
+            try {
+              if (petstoreService.queryPetstore(pet -> { }) < 0) {
+                failures.incrementAndGet();
+              }
+            } catch (Exception exception) {
+              failures.incrementAndGet();
+            }
+          }, executor);
+        }
+        CompletableFuture.allOf(queries).join();
+      }
+    }
+    final long elapsedNanos = System.nanoTime() - start;
+    final long cpuNanos = os.getProcessCpuTime() - cpuStart;
+    log.info("{} client: {} requests ({} failed) in {} ms, {} requests/s, {} ms CPU per request, {} requests per CPU second, "
+            + "peak {} threads", async ? "async" : "blocking", requests, failures.get(), TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+        String.format("%.1f", requests * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos),
+        String.format("%.2f", cpuNanos / (double) TimeUnit.MILLISECONDS.toNanos(1) / requests),
+        String.format("%.1f", requests * (double) TimeUnit.SECONDS.toNanos(1) / Math.max(1, cpuNanos)), threads.getPeakThreadCount());
+    if (!async) {
+      log.info("{} of the blocking queries shared an identical query in flight", petstoreService.coalescedCount() - coalescedBefore);
+    }
+  }
+}
@@ -0,0 +1,39 @@
+package io.netfoundry.zitispringboot;
+
+import org.openziti.ZitiContext;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports the Ziti context as {@code zitiContext} in {@code /actuator/health} and in the readiness group: out of
+ * service while it is starting, down if its setup failed or the SDK no longer reports it as active, and up otherwise.
+ * The {@code state} detail is the {@link ZitiContextStartup.State}.
+ */
+@Component
+public class ZitiContextHealthIndicator implements HealthIndicator {
+  private final ZitiContextStartup zitiContextStartup;
+
+  public ZitiContextHealthIndicator(ZitiContextStartup zitiContextStartup) {
+    this.zitiContextStartup = zitiContextStartup;
+  }
+
+  @Override
+  public Health health() {
+    final ZitiContextStartup.State state = zitiContextStartup.state();
+    return switch (state) {
+      case Starting -> Health.outOfService().withDetail("state", state).build();
+      case NotAuthorized, Failed -> Health.down().withDetail("state", state)
+          .withDetail("error", String.valueOf(zitiContextStartup.failure().getMessage())).build();
+      case Active -> {
+        final ZitiContext zitiContext = zitiContextStartup.contextIfActive();
+        final String status = zitiContext.getStatus().toString();
+        yield (status.startsWith("Active") ? Health.up() : Health.down())
+            .withDetail("state", state)
+            .withDetail("context", zitiContext.name())
+            .withDetail("status", status)
+            .build();
+      }
+    };
+  }
+}
@@ -0,0 +1,124 @@
+package io.netfoundry.zitispringboot;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import org.openziti.ZitiContext;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Sets up the Ziti context on a background thread, so enrolling through Aperitivo and authenticating with a slow
+ * controller do not hold up the Spring context. The application starts serving at once, reports the {@link State}
+ * through the {@code zitiContext} health indicator, and callers that need the overlay wait for the context with
+ * {@link #awaitActive}.
+ */
+@Slf4j
+public class ZitiContextStartup {
+
+  public enum State {
+    /** enrolling or authenticating */
+    Starting,
+    /** the context authenticated and can dial services */
+    Active,
+    /** the controller rejected the identity */
+    NotAuthorized,
+    /** the setup failed for another reason, e.g. Aperitivo could not be reached */
+    Failed
+  }
+
+  /**
+   * Thrown by the setup when the controller rejects the identity, which waiting or retrying will not change.
+   */
+  public static class NotAuthorizedException extends IllegalStateException {
+    public NotAuthorizedException(String message) {
+      super(message);
+    }
+  }
+
+  private final CompletableFuture<ZitiContext> context;
+  private volatile State state = State.Starting;
+  private volatile Throwable failure;
+
+  /**
+   * Starts the setup on a daemon thread.
+   * @param setup creates the context and returns it once it is active
+   */
+  public ZitiContextStartup(Supplier<ZitiContext> setup) {
+    this.context = CompletableFuture.supplyAsync(setup,
+        runnable -> Thread.ofPlatform().name("ziti-context-startup").daemon().start(runnable));
+    this.context.whenComplete((zitiContext, exception) -> {
+      if (exception == null) {
+        state = State.Active;
+        log.info("The ziti context {} is active", zitiContext.name());
+        return;
+      }
+      failure = exception instanceof CompletionException ? exception.getCause() : exception;
+      state = failure instanceof NotAuthorizedException ? State.NotAuthorized : State.Failed;
+      log.error("The ziti context could not be set up: {}", failure.getMessage());
+    });
+  }
+
+  public State state() {
+    return state;
+  }
+
+  /**
+   * @return why the setup failed, or null while it is starting or once it is active
+   */
+  public Throwable failure() {
+    return failure;
+  }
+
+  /**
+   * @return the context if it is already active, otherwise null
+   */
+  public ZitiContext contextIfActive() {
+    return context.isDone() && !context.isCompletedExceptionally() ? context.join() : null;
+  }
+
+  /**
+   * Waits for the context to become active. A setup that already failed fails at once, and a timeout of zero fails at
+   * once unless the context is active.
+   * @throws IOException if the context is not active within the timeout or its setup failed
+   */
+  public ZitiContext awaitActive(Duration timeout) throws IOException {
+    try {
+      return context.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+    } catch (TimeoutException exception) {
+      throw new IOException(String.format("The ziti context is still starting after %d ms", timeout.toMillis()));
+    } catch (ExecutionException exception) {
+      throw new IOException("The ziti context could not be set up: " + exception.getCause().getMessage(), exception.getCause());
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for the ziti context");
+    }
+  }
+
+  /**
+   * @return completes with the context once it is active, or exceptionally if its setup fails
+   */
+  public CompletableFuture<ZitiContext> whenActive() {
+    return context.copy();
+  }
+
+  /**
+   * The non-blocking {@link #awaitActive}.
+   * @return completes with the context once it is active, or with an {@link IOException} in the same cases
+   */
+  public CompletableFuture<ZitiContext> whenActive(Duration timeout) {
+    return whenActive()
+        .orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+        .exceptionallyCompose(exception -> {
+          final Throwable cause = exception instanceof CompletionException ? exception.getCause() : exception;
+          return CompletableFuture.failedFuture(cause instanceof TimeoutException
+              ? new IOException(String.format("The ziti context is still starting after %d ms", timeout.toMillis()))
+              : new IOException("The ziti context could not be set up: " + cause.getMessage(), cause));
+        });
+  }
+}
@@ -1,23 +1,36 @@
 package io.netfoundry.zitispringboot.config;
 
-import static io.netfoundry.zitispringboot.demoutils.AperitivoUtils.DEFAULT_ZITI_IDENTITY_FILE;
+import static com.example.demoutils.AperitivoClient.DEFAULT_JSON_IDENTITY_FILE;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import javax.net.ssl.SSLContext;
 import org.apache.hc.client5.http.ssl.DefaultClientTlsStrategy;
 import org.apache.hc.client5.http.ssl.HostnameVerificationPolicy;
 import org.apache.hc.client5.http.ssl.NoopHostnameVerifier;
 import org.apache.hc.client5.http.ssl.TlsSocketStrategy;
 import org.apache.hc.client5.http.ssl.TrustAllStrategy;
+import org.apache.hc.core5.reactor.ssl.SSLBufferMode;
 import org.apache.hc.core5.ssl.SSLContextBuilder;
+import org.openziti.IdentityConfig;
 import org.openziti.Ziti;
 import org.openziti.ZitiContext;
+import org.openziti.identity.Enroller;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import io.netfoundry.zitispringboot.demoutils.AperitivoUtils;
+import org.springframework.context.annotation.Lazy;
+import com.example.demoutils.AperitivoClient;
+import com.example.demoutils.ContextActivation;
+import com.example.demoutils.StartupTimer;
+import io.netfoundry.zitispringboot.ZitiContextStartup;
 import lombok.extern.slf4j.Slf4j;
 
 @Configuration
@@ -30,35 +43,81 @@ public class ApplicationConfig {
     this.apertivoUrl = apertivoUrl;
   }
 
+  /**
+   * Enrolls if there is no identity yet and initializes Ziti, in the background.
+   */
   @Bean
-  public ZitiContext zitiContext() {
-    if (new File(DEFAULT_ZITI_IDENTITY_FILE).exists()) {
-      return loadIdentity(DEFAULT_ZITI_IDENTITY_FILE);
+  public ZitiContextStartup zitiContextStartup() {
+    return new ZitiContextStartup(() -> {
+      if (new File(DEFAULT_JSON_IDENTITY_FILE).exists()) {
+        return loadIdentity(DEFAULT_JSON_IDENTITY_FILE);
+      }
+      final Path identityFile = new AperitivoClient(apertivoUrl)
+          .provision(Path.of(DEFAULT_JSON_IDENTITY_FILE), ApplicationConfig::enrollJson)
+          .join();
+      return loadIdentity(identityFile.toString());
+    });
+  }
+
+  /**
+   * The active context, for beans that need it. It is lazy, as waiting for it would hold up startup again.
+   */
+  @Bean
+  @Lazy
+  public ZitiContext zitiContext(ZitiContextStartup zitiContextStartup,
+      @Value("${io.openziti.taste-of-ziti.context.await-timeout:30s}") Duration awaitTimeout) throws IOException {
+    return zitiContextStartup.awaitActive(awaitTimeout);
+  }
+
+  /**
+   * Enrolls into the JSON identity format, which the SDK version this application uses can store directly.
+   */
+  private static void enrollJson(final String jwt, final Path file) throws Exception {
+    final IdentityConfig identityConfig = Enroller.fromJWT(jwt).enroll();
+    StartupTimer.end(StartupTimer.Phase.ENROLL);
+    StartupTimer.begin(StartupTimer.Phase.WRITE_KEYSTORE);
+    try (final OutputStream out = Files.newOutputStream(file)) {
+      identityConfig.store(out);
     }
-    return loadIdentity(AperitivoUtils.createIdentityKeystore(apertivoUrl));
+    StartupTimer.end(StartupTimer.Phase.WRITE_KEYSTORE);
   }
 
+  /**
+   * TLS for the Ziti HTTP client. Sessions are cached per host and port, so a new connection to a service that was
+   * called before resumes its session with an abbreviated handshake.
+   */
   @Bean("zitiTlsSocketStrategy")
-  public TlsSocketStrategy zitiTlsSocketStrategy() throws NoSuchAlgorithmException, KeyStoreException, KeyManagementException {
-    return new DefaultClientTlsStrategy(new SSLContextBuilder().loadTrustMaterial(null, TrustAllStrategy.INSTANCE).build(),
+  public TlsSocketStrategy zitiTlsSocketStrategy(ZitiClientProperties clientProperties)
+      throws NoSuchAlgorithmException, KeyStoreException, KeyManagementException {
+    final ZitiClientProperties.Tls tls = clientProperties.tls();
+    final SSLContext sslContext = new SSLContextBuilder().loadTrustMaterial(null, TrustAllStrategy.INSTANCE).build();
+    sslContext.getClientSessionContext().setSessionCacheSize(tls.sessionCacheSize());
+    sslContext.getClientSessionContext().setSessionTimeout((int) tls.sessionTimeout().toSeconds());
+    return new DefaultClientTlsStrategy(sslContext, tls.protocols().toArray(String[]::new), null, SSLBufferMode.STATIC,
         HostnameVerificationPolicy.CLIENT, NoopHostnameVerifier.INSTANCE);
   }
 
   private ZitiContext loadIdentity(final String identityFile) {
     log.info("Attempting to connect to ziti using identity stored in {}", identityFile);
+    StartupTimer.begin(StartupTimer.Phase.ZITI_INIT);
     Ziti.init(identityFile, "".toCharArray(), false);
+    StartupTimer.end(StartupTimer.Phase.ZITI_INIT);
+    StartupTimer.begin(StartupTimer.Phase.CONTEXT_ACTIVE);
     final ZitiContext zitiContext = Ziti.getContexts().stream().findFirst().orElseThrow(() -> {
       log.error("Could not establish a Ziti context using the identity {}", identityFile);
       return new IllegalArgumentException("Could not create a ZitiContext");
     });
-    if (!zitiContext.getStatus().toString().equals("Active")) {
-      log.warn("Failed to establish a ziti context, status: {}.", zitiContext.getStatus());
-      if (zitiContext.getStatus().toString().equals("NotAuthorized")) {
+    final String status = ContextActivation.awaitLoaded(zitiContext, ContextActivation.DEFAULT_TIMEOUT);
+    if (!status.equals("Active")) {
+      log.warn("Failed to establish a ziti context, status: {}.", status);
+      if (status.equals("NotAuthorized")) {
         log.error("Cannot authenticate with the configured identity. If using '{}', try deleting this saved identity file and trying again",
-            DEFAULT_ZITI_IDENTITY_FILE);
+            DEFAULT_JSON_IDENTITY_FILE);
+        throw new ZitiContextStartup.NotAuthorizedException("Could not authenticate the ZitiContext from: " + identityFile);
       }
       throw new IllegalArgumentException("Could not authenticate the ZitiContext from: " + identityFile);
     }
+    StartupTimer.end(StartupTimer.Phase.CONTEXT_ACTIVE);
     return zitiContext;
   }
 
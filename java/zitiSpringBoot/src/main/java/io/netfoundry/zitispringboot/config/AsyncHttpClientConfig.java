@@ -0,0 +1,77 @@
+package io.netfoundry.zitispringboot.config;
+
+import java.net.InetAddress;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.concurrent.Executors;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import org.openziti.Ziti;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Dispatcher;
+import okhttp3.Dns;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+/**
+ * The non-blocking alternative to the {@code CloseableHttpClient} from {@code @EnableZitiHttpClient}, enabled with
+ * {@code io.openziti.taste-of-ziti.http-client=async}.
+ * <p>
+ * HttpClient 5's {@code CloseableHttpAsyncClient} drives NIO socket channels from its own reactor, and the Ziti SDK only
+ * provides blocking sockets through its {@code SocketFactory}, so the async client here is OkHttp on that factory. Over
+ * TLS it negotiates HTTP/2 with ALPN and multiplexes concurrent requests over one connection, and its dispatcher runs
+ * calls on virtual threads, so a request waiting on the overlay does not hold a platform thread.
+ */
+@Configuration
+@ConditionalOnProperty(name = "io.openziti.taste-of-ziti.http-client", havingValue = "async")
+@Slf4j
+public class AsyncHttpClientConfig {
+
+  /**
+   * Built while Ziti may still be starting. OkHttp only uses the socket factory and resolver when it connects, and
+   * callers wait for the Ziti context to be active before sending requests.
+   */
+  @Bean("zitiAsyncHttpClient")
+  public OkHttpClient zitiAsyncHttpClient(@Value("${io.openziti.taste-of-ziti.async.max-requests:256}") int maxRequests)
+      throws NoSuchAlgorithmException, KeyManagementException {
+    final Dispatcher dispatcher = new Dispatcher(Executors.newVirtualThreadPerTaskExecutor());
+    dispatcher.setMaxRequests(maxRequests);
+    dispatcher.setMaxRequestsPerHost(maxRequests);
+    // trust everything, the same as the TLS strategy of the blocking client
+    final X509TrustManager trustAll = new X509TrustManager() {
+      @Override
+      public void checkClientTrusted(X509Certificate[] chain, String authType) {
+      }
+
+      @Override
+      public void checkServerTrusted(X509Certificate[] chain, String authType) {
+      }
+
+      @Override
+      public X509Certificate[] getAcceptedIssuers() {
+        return new X509Certificate[0];
+      }
+    };
+    final SSLContext sslContext = SSLContext.getInstance("TLS");
+    sslContext.init(null, new TrustManager[] {trustAll}, null);
+    log.info("Using the async http client, at most {} requests in flight", maxRequests);
+    return new OkHttpClient.Builder()
+        .socketFactory(Ziti.getSocketFactory())
+        .dns(hostname -> {
+          final InetAddress address = Ziti.getDNSResolver().resolve(hostname);
+          return address != null ? List.of(address) : Dns.SYSTEM.lookup(hostname);
+        })
+        .sslSocketFactory(sslContext.getSocketFactory(), trustAll)
+        .hostnameVerifier((hostname, session) -> true)
+        .protocols(List.of(Protocol.HTTP_2, Protocol.HTTP_1_1))
+        .dispatcher(dispatcher)
+        .build();
+  }
+}
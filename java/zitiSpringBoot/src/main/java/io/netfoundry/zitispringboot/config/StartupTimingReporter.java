@@ -0,0 +1,37 @@
+package io.netfoundry.zitispringboot.config;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import com.example.demoutils.StartupTimer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Logs the startup phases once the application is ready, and again on shutdown when the first request has usually
+ * added its first byte time. If a report file is configured it is rewritten each time.
+ */
+@Component
+@Slf4j
+public class StartupTimingReporter {
+  private final String timingReport;
+
+  public StartupTimingReporter(@Value("${io.openziti.taste-of-ziti.timingReport:}") String timingReport) {
+    this.timingReport = timingReport;
+  }
+
+  @EventListener({ApplicationReadyEvent.class, ContextClosedEvent.class})
+  public void report() {
+    StartupTimer.logSummary();
+    if (!timingReport.isBlank()) {
+      try {
+        StartupTimer.writeReport(Path.of(timingReport));
+      } catch (IOException exception) {
+        log.error("Could not write the startup timing report: {}", exception.getMessage());
+      }
+    }
+  }
+}
@@ -0,0 +1,44 @@
+package io.netfoundry.zitispringboot.config;
+
+import java.time.Duration;
+import java.util.List;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Connection pool and TLS settings of the Ziti HTTP client, under {@code io.openziti.taste-of-ziti.client}. Every new
+ * connection to a dark service is an overlay dial plus a TLS handshake, so the defaults keep connections pooled and TLS
+ * sessions cached long enough for repeated calls to skip both.
+ *
+ * @param pool how many connections are kept and for how long
+ * @param tls the TLS session cache and the protocols offered
+ */
+@ConfigurationProperties(prefix = "io.openziti.taste-of-ziti.client")
+public record ZitiClientProperties(@DefaultValue Pool pool, @DefaultValue Tls tls) {
+
+  /**
+   * @param maxTotal connections open at once, over all routes
+   * @param maxPerRoute connections open at once to one host and port
+   * @param evictIdleAfter idle connections are closed by a background thread after this long
+   * @param timeToLive connections are not reused after this long, however busy. Zero or negative for no limit
+   * @param validateAfterInactivity a connection idle this long is checked for staleness before it is leased again
+   */
+  public record Pool(
+      @DefaultValue("50") int maxTotal,
+      @DefaultValue("20") int maxPerRoute,
+      @DefaultValue("1m") Duration evictIdleAfter,
+      @DefaultValue("10m") Duration timeToLive,
+      @DefaultValue("2s") Duration validateAfterInactivity) {
+  }
+
+  /**
+   * @param sessionCacheSize TLS sessions kept for resumption, 0 for no limit
+   * @param sessionTimeout how long a cached TLS session can be resumed
+   * @param protocols the TLS versions offered, in order of preference
+   */
+  public record Tls(
+      @DefaultValue("100") int sessionCacheSize,
+      @DefaultValue("24h") Duration sessionTimeout,
+      @DefaultValue({"TLSv1.3", "TLSv1.2"}) List<String> protocols) {
+  }
+}
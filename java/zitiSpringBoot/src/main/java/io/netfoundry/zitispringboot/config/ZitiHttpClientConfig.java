@@ -0,0 +1,155 @@
+package io.netfoundry.zitispringboot.config;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.hc.client5.http.DnsResolver;
+import org.apache.hc.client5.http.SystemDefaultDnsResolver;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.impl.ChainElement;
+import org.apache.hc.client5.http.impl.DefaultSchemePortResolver;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.DefaultHttpClientConnectionOperator;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.ssl.TlsSocketStrategy;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.URIScheme;
+import org.apache.hc.core5.http.config.RegistryBuilder;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.pool.PoolConcurrencyPolicy;
+import org.apache.hc.core5.pool.PoolReusePolicy;
+import org.apache.hc.core5.util.TimeValue;
+import org.openziti.Ziti;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.ObservationExecChainHandler;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import io.micrometer.observation.ObservationRegistry;
+import io.netfoundry.zitispringboot.ZitiContextStartup;
+
+/**
+ * The pooled, instrumented HTTP client that reaches dark services over Ziti. It replaces the client from
+ * {@code @EnableZitiHttpClient}, whose connection manager cannot be reached to measure, and publishes:
+ * <ul>
+ * <li>{@code httpcomponents.httpclient.request}: a timer per request, tagged with method, status and outcome</li>
+ * <li>{@code httpcomponents.httpclient.pool.*}: leased, available and pending connections of the pool</li>
+ * <li>{@code ziti.tls.handshake}: how long each TLS handshake over the overlay took</li>
+ * <li>{@code ziti.context.status}: 1 for the status the Ziti context is in, 0 for the others</li>
+ * </ul>
+ */
+@Configuration
+@EnableConfigurationProperties(ZitiClientProperties.class)
+public class ZitiHttpClientConfig {
+  private static final String POOL_NAME = "zitiHttpClient";
+  // the statuses of the SDK's ZitiContext, by name, as the SDK represents some of them as classes rather than constants
+  private static final List<String> CONTEXT_STATUSES = List.of("Loading", "Active", "Disabled", "NotAuthorized", "Unavailable", "Impaired");
+
+  /**
+   * The Ziti socket factory and resolver are only used when a connection is opened, and callers wait for the Ziti
+   * context to be active before sending requests, so the pool can be built while Ziti is still starting.
+   */
+  @Bean
+  public PoolingHttpClientConnectionManager zitiConnectionManager(@Qualifier("zitiTlsSocketStrategy") TlsSocketStrategy zitiTlsSocketStrategy, ZitiClientProperties clientProperties,
+      MeterRegistry meterRegistry) {
+    final Timer handshakes = Timer.builder("ziti.tls.handshake")
+        .description("Time to complete a TLS handshake with a service over the overlay")
+        .tag("pool", POOL_NAME)
+        .register(meterRegistry);
+    final DefaultHttpClientConnectionOperator operator = new TimedTlsConnectionOperator(zitiTlsSocketStrategy, handshakes);
+    final ZitiClientProperties.Pool pool = clientProperties.pool();
+    // LIFO reuse keeps the most recently used connections, and their TLS sessions, warm and lets the rest go idle
+    final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(operator,
+        PoolConcurrencyPolicy.STRICT, PoolReusePolicy.LIFO, TimeValue.NEG_ONE_MILLISECOND, null);
+    connectionManager.setMaxTotal(pool.maxTotal());
+    connectionManager.setDefaultMaxPerRoute(pool.maxPerRoute());
+    connectionManager.setDefaultConnectionConfig(ConnectionConfig.custom()
+        .setTimeToLive(pool.timeToLive().isPositive() ? TimeValue.of(pool.timeToLive()) : TimeValue.NEG_ONE_MILLISECOND)
+        .setValidateAfterInactivity(TimeValue.of(pool.validateAfterInactivity()))
+        .build());
+    return connectionManager;
+  }
+
+  @Bean
+  @Primary
+  public CloseableHttpClient instrumentedZitiHttpClient(PoolingHttpClientConnectionManager zitiConnectionManager,
+      ZitiClientProperties clientProperties, ObservationRegistry observationRegistry) {
+    return HttpClients.custom()
+        .setConnectionManager(zitiConnectionManager)
+        .evictIdleConnections(TimeValue.of(clientProperties.pool().evictIdleAfter()))
+        .evictExpiredConnections()
+        .addExecInterceptorAfter(ChainElement.RETRY.name(), "micrometer", new ObservationExecChainHandler(observationRegistry))
+        .build();
+  }
+
+  @Bean
+  public MeterBinder zitiConnectionPoolMetrics(PoolingHttpClientConnectionManager zitiConnectionManager) {
+    return new PoolingHttpClientConnectionManagerMetricsBinder(zitiConnectionManager, POOL_NAME);
+  }
+
+  /**
+   * The gauges are registered once the context is active, as its name is not known before.
+   */
+  @Bean
+  public MeterBinder zitiContextMetrics(ZitiContextStartup zitiContextStartup) {
+    return registry -> zitiContextStartup.whenActive().thenAccept(zitiContext -> {
+      for (final String status : CONTEXT_STATUSES) {
+        Gauge.builder("ziti.context.status", zitiContext, context -> context.getStatus().toString().startsWith(status) ? 1 : 0)
+            .description("1 for the status the Ziti context is in, 0 for the others")
+            .tag("context", zitiContext.name())
+            .tag("status", status)
+            .register(registry);
+      }
+    });
+  }
+
+  /**
+   * Opens connections through the Ziti socket factory and resolver, and times the TLS handshake on each of them.
+   */
+  private static final class TimedTlsConnectionOperator extends DefaultHttpClientConnectionOperator {
+    private static final String HANDSHAKE_START = TimedTlsConnectionOperator.class.getName() + ".handshakeStart";
+    private final Timer handshakes;
+
+    private TimedTlsConnectionOperator(TlsSocketStrategy tlsSocketStrategy, Timer handshakes) {
+      super(proxy -> Ziti.getSocketFactory().createSocket(), DefaultSchemePortResolver.INSTANCE, new ZitiDnsResolver(),
+          RegistryBuilder.<TlsSocketStrategy>create().register(URIScheme.HTTPS.id, tlsSocketStrategy).build());
+      this.handshakes = handshakes;
+    }
+
+    @Override
+    protected void onBeforeTlsHandshake(HttpContext context, HttpHost host) {
+      context.setAttribute(HANDSHAKE_START, System.nanoTime());
+    }
+
+    @Override
+    protected void onAfterTlsHandshake(HttpContext context, HttpHost host) {
+      if (context.getAttribute(HANDSHAKE_START) instanceof Long start) {
+        handshakes.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+      }
+    }
+  }
+
+  /**
+   * Resolves intercepted names through Ziti and everything else through the system DNS.
+   */
+  private static final class ZitiDnsResolver implements DnsResolver {
+    @Override
+    public InetAddress[] resolve(String host) throws UnknownHostException {
+      final InetAddress address = Ziti.getDNSResolver().resolve(host);
+      return address != null ? new InetAddress[] {address} : SystemDefaultDnsResolver.INSTANCE.resolve(host);
+    }
+
+    @Override
+    public String resolveCanonicalHostname(String host) throws UnknownHostException {
+      return Ziti.getDNSResolver().resolve(host) != null ? host : SystemDefaultDnsResolver.INSTANCE.resolveCanonicalHostname(host);
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package io.netfoundry.zitispringboot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class SingleFlightTest {
+
+  private static final int CALLERS = 8;
+
+  private final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+  private final AtomicInteger runs = new AtomicInteger();
+  private final CountDownLatch release = new CountDownLatch(1);
+  private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+  @AfterEach
+  void stopExecutor() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  void concurrentCallersShareOneCall() throws Exception {
+    final List<Future<String>> results = callConcurrently(() -> new String("pets"));
+    for (Future<String> result : results) {
+      assertSame(results.get(0).get(5, TimeUnit.SECONDS), result.get(5, TimeUnit.SECONDS));
+    }
+    assertEquals(1, runs.get());
+    assertEquals(1, singleFlight.executedCount());
+    assertEquals(CALLERS - 1, singleFlight.coalescedCount());
+  }
+
+  @Test
+  void concurrentCallersShareAFailure() throws Exception {
+    final List<Future<String>> results = callConcurrently(() -> {
+      throw new IOException("Connection reset");
+    });
+    for (Future<String> result : results) {
+      final ExecutionException exception = assertThrows(ExecutionException.class,
+          () -> result.get(5, TimeUnit.SECONDS));
+      assertInstanceOf(IOException.class, exception.getCause());
+      assertEquals("Connection reset", exception.getCause().getMessage());
+    }
+    assertEquals(1, runs.get());
+  }
+
+  @Test
+  void theKeyIsClearedOnceTheCallReturns() throws Exception {
+    callConcurrently(() -> "pets").get(0).get(5, TimeUnit.SECONDS);
+    assertEquals(0, singleFlight.inFlightCount());
+    singleFlight.execute("available", () -> {
+      runs.incrementAndGet();
+      return "more pets";
+    });
+    assertEquals(2, runs.get());
+    assertEquals(2, singleFlight.executedCount());
+  }
+
+  @Test
+  void theKeyIsClearedOnceTheCallFails() throws Exception {
+    final Future<String> failed = callConcurrently(() -> {
+      throw new IOException("Connection reset");
+    }).get(0);
+    assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+    assertEquals(0, singleFlight.inFlightCount());
+    assertEquals("pets", singleFlight.execute("available", () -> "pets"));
+  }
+
+  /**
+   * Starts {@link #CALLERS} identical calls and lets the one that runs finish only once all the others are waiting
+   * for it.
+   */
+  private List<Future<String>> callConcurrently(SingleFlight.Call<String> call) throws InterruptedException {
+    final List<Future<String>> results = new ArrayList<>();
+    for (int i = 0; i < CALLERS; i++) {
+      results.add(executor.submit(() -> singleFlight.execute("available", () -> {
+        runs.incrementAndGet();
+        try {
+          release.await();
+        } catch (InterruptedException exception) {
+          Thread.currentThread().interrupt();
+        }
+        return call.call();
+      })));
+    }
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (singleFlight.coalescedCount() < CALLERS - 1 && System.nanoTime() < deadline) {
+      Thread.sleep(5);
+    }
+    assertEquals(1, singleFlight.inFlightCount());
+    release.countDown();
+    for (Future<String> result : results) {
+      try {
+        result.get(5, TimeUnit.SECONDS);
+      } catch (ExecutionException exception) {
+        // checked by the caller
+      } catch (TimeoutException exception) {
+        throw new AssertionError("A caller did not finish", exception);
+      }
+    }
+    return results;
+  }
+}
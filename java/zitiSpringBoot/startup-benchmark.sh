@@ -0,0 +1,65 @@
+#!/usr/bin/env bash
+#
+# Compares how long zitiSpringBoot takes to become ready when started from the executable jar, from the extracted jar,
+# with Spring AOT, and with AOT plus the CDS archive. Build with `./mvnw -Paot package` first.
+#
+# Time to ready is the JVM uptime Spring Boot logs with "Started ZitiSpringBootApplication", so it covers JVM startup,
+# class loading and context refresh. It does not cover the Ziti context setup, which runs on a background thread once
+# the application has started and is reported by /actuator/health/readiness. Each variant is started RUNS times
+# (default 5) and the median is reported.
+
+set -euo pipefail
+
+cd "$(dirname "$0")"
+RUNS=${RUNS:-5}
+JAR=target/zitiSpringBoot-0.0.1-SNAPSHOT.jar
+EXTRACTED=target/extracted/zitiSpringBoot-0.0.1-SNAPSHOT.jar
+ARCHIVE=target/extracted/application.jsa
+
+if [[ ! -f "$JAR" || ! -f "$EXTRACTED" || ! -f "$ARCHIVE" ]]; then
+  echo "Missing the AOT build, run ./mvnw -Paot package first" >&2
+  exit 1
+fi
+
+# starts the application with the given java arguments, waits until it is ready, stops it and prints the seconds it took
+time_to_ready() {
+  local log
+  log=$(mktemp)
+  java "$@" --server.port=0 > "$log" 2>&1 &
+  local pid=$!
+  local seconds=""
+  for _ in $(seq 1 1200); do
+    seconds=$(grep -o 'process running for [0-9.]*' "$log" | grep -o '[0-9.]*$' || true)
+    if [[ -n "$seconds" ]] || ! kill -0 "$pid" 2> /dev/null; then
+      break
+    fi
+    sleep 0.1
+  done
+  kill "$pid" 2> /dev/null || true
+  wait "$pid" 2> /dev/null || true
+  if [[ -z "$seconds" ]]; then
+    echo "The application did not start:" >&2
+    tail -20 "$log" >&2
+    rm -f "$log"
+    return 1
+  fi
+  rm -f "$log"
+  echo "$seconds"
+}
+
+measure() {
+  local label=$1
+  shift
+  local times=()
+  for _ in $(seq 1 "$RUNS"); do
+    times+=("$(time_to_ready "$@")")
+  done
+  local median
+  median=$(printf '%s\n' "${times[@]}" | sort -n | awk '{ t[NR] = $1 } END { print (NR % 2 ? t[(NR + 1) / 2] : (t[NR / 2] + t[NR / 2 + 1]) / 2) }')
+  printf '%-24s median %6.3f s   runs: %s\n' "$label" "$median" "${times[*]}"
+}
+
+measure "executable jar" -jar "$JAR"
+measure "extracted" -jar "$EXTRACTED"
+measure "extracted + AOT" -Dspring.aot.enabled=true -jar "$EXTRACTED"
+measure "extracted + AOT + CDS" -XX:SharedArchiveFile="$ARCHIVE" -Dspring.aot.enabled=true -jar "$EXTRACTED"